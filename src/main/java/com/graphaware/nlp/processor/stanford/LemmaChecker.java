@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford;
+
+import com.graphaware.nlp.processor.AbstractTextProcessor;
+
+/**
+ * Single pass equivalent of {@link AbstractTextProcessor#PUNCT_REGEX_PATTERN}: one or more words made of letters
+ * and ASCII digits, separated by exactly one of <code>- _ ' .</code> or a space. As with the regex, one line
+ * terminator is allowed at the very end.
+ */
+public final class LemmaChecker {
+
+    private LemmaChecker() {
+    }
+
+    public static boolean isValid(String value) {
+        int length = value.length();
+        if (length > 1 && value.charAt(length - 2) == '\r' && value.charAt(length - 1) == '\n') {
+            length -= 2;
+        } else if (length > 0 && isLineTerminator(value.charAt(length - 1))) {
+            length--;
+        }
+
+        boolean expectWord = true;
+        int i = 0;
+        while (i < length) {
+            int codePoint = value.codePointAt(i);
+            if (isWordCharacter(codePoint)) {
+                expectWord = false;
+            } else if (!expectWord && isSeparator(codePoint)) {
+                expectWord = true;
+            } else {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return !expectWord;
+    }
+
+    private static boolean isWordCharacter(int codePoint) {
+        return (codePoint >= '0' && codePoint <= '9') || Character.isLetter(codePoint);
+    }
+
+    private static boolean isSeparator(int codePoint) {
+        return codePoint == '-' || codePoint == '_' || codePoint == '\'' || codePoint == '.' || codePoint == ' ';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
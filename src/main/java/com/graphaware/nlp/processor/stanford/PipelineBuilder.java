@@ -4,11 +4,16 @@ import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.nlp.exception.InvalidPipelineException;
 import com.graphaware.nlp.processor.AbstractTextProcessor;
 import com.graphaware.nlp.processor.stanford.annotators.StopwordAnnotator;
+import com.graphaware.nlp.processor.stanford.annotators.WhitelistAnnotator;
+import com.graphaware.nlp.processor.stanford.model.ModelRegistry;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import org.neo4j.logging.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 public class PipelineBuilder {
@@ -136,24 +141,37 @@ public class PipelineBuilder {
         return this;
     }
 
+    /**
+     * Adds a stopword annotator named after its settings, so that pipelines with the same stopwords share one
+     * annotator and adding a pipeline again reuses the annotator registered the first time.
+     */
     public PipelineBuilder customStopWordAnnotator(String customStopWordList, boolean checkLemma) {
+        if (Arrays.asList(annotators.toString().split("\\s*,\\s*")).contains(StopwordAnnotator.ANNOTATOR_CLASS)) {
+            throw new RuntimeException("A standard stopword annotator already exist!");
+        }
         checkForExistingAnnotators();
         String stopWordList;
-        if (annotators.indexOf("stopword") >= 0) {
-            throw new RuntimeException("A standard stopword annotator already exist!");
+        if (customStopWordList.startsWith("+")) {
+            stopWordList = AbstractTextProcessor.DEFAULT_STOP_WORD_LIST + "," + customStopWordList.replace("+,", "").replace("+", "");
         } else {
-            String annoName = name + "_" + UUID.randomUUID().toString();
-            annotators.append(annoName);
-            properties.setProperty("customAnnotatorClass." + annoName, StopwordAnnotator.class.getName());
-            if (customStopWordList.startsWith("+")) {
-                stopWordList = AbstractTextProcessor.DEFAULT_STOP_WORD_LIST + "," + customStopWordList.replace("+,", "").replace("+", "");
-            } else {
-                stopWordList = customStopWordList;
-            }
+            stopWordList = customStopWordList;
         }
+        String ignoreCase = properties.getProperty(StopwordAnnotator.IGNORE_STOPWORD_CASE, "false");
+        String annoName = contentName(StopwordAnnotator.ANNOTATOR_CLASS, stopWordList, Boolean.toString(checkLemma), ignoreCase);
+        annotators.append(annoName);
+        properties.setProperty("customAnnotatorClass." + annoName, StopwordAnnotator.class.getName());
         properties.setProperty(StopwordAnnotator.STOPWORDS_LIST, stopWordList);
         properties.setProperty(StopwordAnnotator.CHECK_LEMMA, Boolean.toString(checkLemma));
-        
+
+        return this;
+    }
+
+    public PipelineBuilder whitelistAnnotator(String whitelist) {
+        checkForExistingAnnotators();
+        String annoName = contentName(WhitelistAnnotator.ANNOTATOR_CLASS, whitelist);
+        annotators.append(annoName);
+        properties.setProperty("customAnnotatorClass." + annoName, WhitelistAnnotator.class.getName());
+        properties.setProperty(WhitelistAnnotator.WHITELIST, whitelist);
         return this;
     }
 
@@ -181,6 +199,28 @@ public class PipelineBuilder {
         return this;
     }
 
+    /**
+     * @return an annotator name made of the prefix and of a hash of the settings, equal for equal settings
+     */
+    public static String contentName(String prefix, String... settings) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String setting : settings) {
+            digest.update(String.valueOf(setting).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder name = new StringBuilder(prefix.length() + 17).append(prefix).append('_');
+        for (int i = 0; i < 8; i++) {
+            name.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return name.toString();
+    }
+
     public StanfordCoreNLP build() {
         properties.setProperty("annotators", annotators.toString());
         properties.setProperty("threads", String.valueOf(threadsNumber));
@@ -188,6 +228,15 @@ public class PipelineBuilder {
         return pipeline;
     }
 
+    /**
+     * Builds the pipeline with the annotators of the registry, loading only the ones no other pipeline uses yet.
+     */
+    public StanfordCoreNLP build(ModelRegistry modelRegistry) {
+        properties.setProperty("annotators", annotators.toString());
+        properties.setProperty("threads", String.valueOf(threadsNumber));
+        return modelRegistry.load(properties);
+    }
+
     public static List<String> getDefaultStopwords() {
         List<String> stopwords = new ArrayList<>();
         Arrays.stream(AbstractTextProcessor.DEFAULT_STOP_WORD_LIST.split(",")).forEach(s -> {
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Bookkeeping of the loaded pipelines for eviction: when each was last used. Gives the order in which pipelines are
+ * unloaded while the models exceed the heap budget, least recently used first, and the pipelines left unused for
+ * longer than the idle timeout. A budget or timeout which is not positive disables that rule.
+ *
+ * Pipelines share models, so the heap freed by unloading one depends on the pipelines still loaded: the caller checks
+ * the size of the loaded models again after each unload rather than weighing pipelines here.
+ */
+public class PipelineEviction {
+
+    private final long maxBytes;
+    private final long idleTimeout;
+    private final LongSupplier clock;
+    private final Map<String, Long> lastUses = new HashMap<>();
+
+    public PipelineEviction(long maxBytes, long idleTimeout) {
+        this(maxBytes, idleTimeout, System::currentTimeMillis);
+    }
+
+    public PipelineEviction(long maxBytes, long idleTimeout, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.idleTimeout = idleTimeout;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || idleTimeout > 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Records a pipeline which was just loaded, counting as used now.
+     */
+    public synchronized void loaded(String name) {
+        lastUses.put(name, clock.getAsLong());
+    }
+
+    public synchronized void used(String name) {
+        lastUses.computeIfPresent(name, (key, lastUse) -> clock.getAsLong());
+    }
+
+    public synchronized void unloaded(String name) {
+        lastUses.remove(name);
+    }
+
+    /**
+     * @param loadedBytes the heap held by the loaded models
+     * @return true if the loaded models exceed the budget
+     */
+    public boolean isOverBudget(long loadedBytes) {
+        return maxBytes > 0 && loadedBytes > maxBytes;
+    }
+
+    /**
+     * @return the loaded pipelines in the order they are unloaded while over budget, least recently used first and
+     * never including the given pipeline, or an empty list if no budget is set
+     */
+    public synchronized List<String> evictionOrder(String keep) {
+        List<String> victims = new ArrayList<>();
+        if (maxBytes <= 0) {
+            return victims;
+        }
+        List<Map.Entry<String, Long>> leastRecentlyUsed = new ArrayList<>(lastUses.entrySet());
+        leastRecentlyUsed.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<String, Long> entry : leastRecentlyUsed) {
+            if (!entry.getKey().equals(keep)) {
+                victims.add(entry.getKey());
+            }
+        }
+        return victims;
+    }
+
+    /**
+     * @return the pipelines not used for longer than the idle timeout
+     */
+    public synchronized List<String> idle() {
+        List<String> victims = new ArrayList<>();
+        if (idleTimeout <= 0) {
+            return victims;
+        }
+        long now = clock.getAsLong();
+        lastUses.forEach((name, lastUse) -> {
+            if (now - lastUse > idleTimeout) {
+                victims.add(name);
+            }
+        });
+        return victims;
+    }
+}
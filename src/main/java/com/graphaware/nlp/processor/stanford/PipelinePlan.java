@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford;
+
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.AbstractTextProcessor;
+import com.graphaware.nlp.processor.stanford.annotators.WhitelistAnnotator;
+
+import java.util.*;
+
+import static com.graphaware.nlp.processor.AbstractTextProcessor.*;
+
+/**
+ * Settings of a {@link PipelineSpecification} resolved once, when the pipeline is created, so that annotating a
+ * document never has to look up processing steps or scan the excluded NE types and the whitelist again.
+ */
+public class PipelinePlan {
+
+    public static final String STEP_RELATIONS = "relations";
+    public static final String STEP_CUSTOM_NER = "customNER";
+    public static final String STEP_CHECK_LEMMA = "checkLemma";
+
+    private final PipelineSpecification specification;
+    private final String language;
+    private final Map<String, Object> processingSteps;
+    private final String stopWords;
+    private final String whitelist;
+    private final List<String> excludedNERList;
+
+    private final boolean ner;
+    private final boolean sentiment;
+    private final boolean phrase;
+    private final boolean dependency;
+    private final boolean relations;
+    private final boolean checkLemma;
+    private final Set<String> excludedNER;
+    private final Set<String> whitelistedWords;
+    private final String stopWordList;
+
+    private PipelinePlan(PipelineSpecification specification) {
+        this.specification = specification;
+        this.language = specification.getLanguage();
+        this.processingSteps = specification.getProcessingStepsAsStrings() != null ? new HashMap<>(specification.getProcessingStepsAsStrings()) : null;
+        this.stopWords = specification.getStopWords();
+        this.whitelist = specification.getWhitelist();
+        this.excludedNERList = specification.getExcludedNER() != null ? new ArrayList<>(specification.getExcludedNER()) : null;
+
+        this.ner = specification.hasProcessingStep(STEP_NER, true) || specification.hasProcessingStep(STEP_CUSTOM_NER);
+        this.sentiment = specification.hasProcessingStep(STEP_SENTIMENT, false);
+        this.phrase = specification.hasProcessingStep(STEP_PHRASE, false);
+        this.dependency = specification.hasProcessingStep(STEP_DEPENDENCY, false);
+        this.relations = specification.hasProcessingStep(STEP_RELATIONS, false);
+        this.checkLemma = specification.hasProcessingStep(STEP_CHECK_LEMMA, true);
+        this.excludedNER = excludedNERList != null ? new HashSet<>(excludedNERList) : Collections.emptySet();
+        this.whitelistedWords = compileWhitelist(whitelist);
+        this.stopWordList = resolveStopWordList(stopWords, whitelist);
+    }
+
+    public static PipelinePlan compile(PipelineSpecification specification) {
+        return new PipelinePlan(specification);
+    }
+
+    /**
+     * @return true if the plan was compiled from this specification, or from one with the same settings
+     */
+    public boolean isCompiledFrom(PipelineSpecification other) {
+        if (other == specification) {
+            return true;
+        }
+        return Objects.equals(language, other.getLanguage())
+                && Objects.equals(processingSteps, other.getProcessingStepsAsStrings())
+                && Objects.equals(stopWords, other.getStopWords())
+                && Objects.equals(whitelist, other.getWhitelist())
+                && Objects.equals(excludedNERList, other.getExcludedNER());
+    }
+
+    /**
+     * @return true if the specification only differs from the one of the plan by its stopwords and whitelist, so
+     * that both load the same models
+     */
+    public boolean hasSameModels(PipelineSpecification other) {
+        return Objects.equals(language, other.getLanguage())
+                && Objects.equals(processingSteps, other.getProcessingStepsAsStrings())
+                && Objects.equals(excludedNERList, other.getExcludedNER());
+    }
+
+    private static Set<String> compileWhitelist(String whitelist) {
+        if (whitelist == null) {
+            return null;
+        }
+        String[] words = whitelist.split(",");
+        if (words.length == 0) {
+            return null;
+        }
+        return WhitelistAnnotator.compile(whitelist);
+    }
+
+    private static String resolveStopWordList(String stopWords, String whitelist) {
+        String stopWordList = AbstractTextProcessor.DEFAULT_STOP_WORD_LIST;
+        if (stopWords != null) {
+            if (stopWords.startsWith("+")) {
+                stopWordList += "," + stopWords.replace("+,", "").replace("+", "");
+            } else if (whitelist != null) {
+                stopWordList = "";
+            } else {
+                stopWordList = stopWords;
+            }
+        }
+        return stopWordList;
+    }
+
+    public PipelineSpecification getSpecification() {
+        return specification;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public boolean hasNER() {
+        return ner;
+    }
+
+    public boolean hasSentiment() {
+        return sentiment;
+    }
+
+    public boolean hasPhrase() {
+        return phrase;
+    }
+
+    public boolean hasDependency() {
+        return dependency;
+    }
+
+    public boolean hasRelations() {
+        return relations;
+    }
+
+    public boolean isCheckLemma() {
+        return checkLemma;
+    }
+
+    public boolean isExcludedNE(String ne) {
+        return !excludedNER.isEmpty() && excludedNER.contains(ne);
+    }
+
+    public boolean hasWhitelist() {
+        return whitelistedWords != null;
+    }
+
+    public String getWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * @param word a word or lemma, already lower cased
+     */
+    public boolean isWhitelisted(String word) {
+        return whitelistedWords == null || whitelistedWords.contains(word);
+    }
+
+    public String getStopWordList() {
+        return stopWordList;
+    }
+}
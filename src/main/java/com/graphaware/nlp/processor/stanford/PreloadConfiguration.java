@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford;
+
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Reads the pipelines to build when the processor starts from a properties file, for example:
+ *
+ * <pre>
+ * pipelines=default,german
+ * default.language=en
+ * default.processingSteps=tokenize,ner,dependency
+ * default.threadNumber=4
+ * german.language=de
+ * german.processingSteps=tokenize,ner,customNER:music
+ * german.stopWords=+,aber
+ * </pre>
+ *
+ * Processing steps without value are enabled, the others take the value after the colon. Each pipeline also accepts
+ * <code>whitelist</code> and comma separated <code>excludedNER</code> and <code>excludedPOS</code>.
+ */
+public class PreloadConfiguration {
+
+    public static final String PIPELINES = "pipelines";
+
+    private PreloadConfiguration() {
+    }
+
+    public static List<PipelineSpecification> load(String path) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get(path));
+             Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return read(properties);
+        }
+    }
+
+    public static List<PipelineSpecification> read(Properties properties) {
+        List<PipelineSpecification> specifications = new ArrayList<>();
+        for (String name : split(properties.getProperty(PIPELINES))) {
+            String language = properties.getProperty(name + ".language");
+            if (language == null) {
+                throw new IllegalArgumentException("No language configured for pipeline " + name);
+            }
+            Map<String, Object> processingSteps = new HashMap<>();
+            for (String step : split(properties.getProperty(name + ".processingSteps"))) {
+                int separator = step.indexOf(':');
+                if (separator < 0) {
+                    processingSteps.put(step, true);
+                } else {
+                    processingSteps.put(step.substring(0, separator).trim(), step.substring(separator + 1).trim());
+                }
+            }
+            PipelineSpecification specification = new PipelineSpecification(name, language,
+                    StanfordTextProcessor.class.getName(), processingSteps,
+                    properties.getProperty(name + ".stopWords"),
+                    Long.parseLong(properties.getProperty(name + ".threadNumber", "1").trim()),
+                    split(properties.getProperty(name + ".excludedNER")),
+                    split(properties.getProperty(name + ".excludedPOS")));
+            specification.setWhitelist(properties.getProperty(name + ".whitelist"));
+            specifications.add(specification);
+        }
+        return specifications;
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String item : value.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -21,14 +21,23 @@ import com.graphaware.nlp.domain.*;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
 import com.graphaware.nlp.processor.AbstractTextProcessor;
 import com.graphaware.nlp.processor.stanford.annotators.StopwordAnnotator;
+import com.graphaware.nlp.processor.stanford.annotators.WhitelistAnnotator;
+import com.graphaware.nlp.processor.stanford.cache.AnnotationCache;
+import com.graphaware.nlp.processor.stanford.cache.TokenLookupCache;
+import com.graphaware.nlp.processor.stanford.concurrent.BoundedExecutor;
+import com.graphaware.nlp.processor.stanford.concurrent.NamedThreadFactory;
+import com.graphaware.nlp.processor.stanford.concurrent.ThreadBudget;
+import com.graphaware.nlp.processor.stanford.model.ModelRegistry;
 import com.graphaware.nlp.processor.stanford.model.NERModelTool;
 import com.graphaware.nlp.util.FileUtils;
 import com.graphaware.nlp.util.Timer;
 import edu.stanford.nlp.coref.CorefCoreAnnotations;
 import edu.stanford.nlp.coref.data.CorefChain;
+import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.ling.HasOffset;
+import edu.stanford.nlp.ling.Label;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.CoreDocument;
@@ -37,6 +46,7 @@ import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.trees.LabeledScoredTreeNode;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
@@ -44,12 +54,17 @@ import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.StringUtils;
 import org.neo4j.logging.Log;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.graphaware.nlp.processor.stanford.PipelineBuilder.DEFAULT_ENGLISH_NER_MODEL;
 import static edu.stanford.nlp.sequences.SeqClassifierFlags.DEFAULT_BACKGROUND_SYMBOL;
@@ -59,22 +74,164 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     private static final Log LOG = LoggerFactory.getLogger(StanfordTextProcessor.class);
     //protected static final String CORE_PIPELINE_NAME = "StanfordNLP.CORE";
-    private static final String STEP_RELATIONS = "relations";
+    private static final String STEP_RELATIONS = PipelinePlan.STEP_RELATIONS;
     //protected static final String DEFAULT_NER_MODEL = "edu/stanford/nlp/models/ner/english.all.3class.distsim.crf.ser.gz";
 
     public static final String TOKENIZER = "tokenizer";
     public static final String SENTIMENT = "sentiment";
 
     protected String backgroundSymbol = DEFAULT_BACKGROUND_SYMBOL;
+    private static final Tree END_OF_PHRASE = new LabeledScoredTreeNode();
     protected final Map<String, StanfordCoreNLP> pipelines = new ConcurrentHashMap<>();
+    protected final Map<String, PipelineStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<String, Creation> creations = new ConcurrentHashMap<>();
+    protected final Map<String, PipelineSpecification> specifications = new ConcurrentHashMap<>();
+    private final Set<String> updated = ConcurrentHashMap.newKeySet();
+    protected final PipelineEviction eviction = new PipelineEviction(
+            Long.getLong(PIPELINES_MAX_BYTES, 0L), Long.getLong(PIPELINES_IDLE_TIMEOUT, 0L));
+    private volatile ScheduledExecutorService evictionScheduler;
+    private volatile ExecutorService loaderExecutor;
+    private static final List<String> NULL_SINGLETON = Collections.singletonList(null);
+    private final Map<String, List<String>> singletonLists = new ConcurrentHashMap<>();
 
     public static final String PROCESSING_STEP_FINE_GRAINED_NER = "fineGrainedNER";
     private static final boolean DEFAULT_FINE_GRAINED_NER = false;
 
+    /**
+     * System properties sizing the asynchronous annotation queue: number of worker threads, number of documents
+     * allowed to wait for a worker and how long (in ms) a caller waits for room in the queue before being rejected.
+     */
+    public static final String ASYNC_WORKERS = "ga.nlp.stanford.async.workers";
+    public static final String ASYNC_QUEUE_SIZE = "ga.nlp.stanford.async.queueSize";
+    public static final String ASYNC_OFFER_TIMEOUT = "ga.nlp.stanford.async.offerTimeout";
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+    private static final long DEFAULT_ASYNC_OFFER_TIMEOUT = 0L;
+
+    /**
+     * System properties capping the number of threads all pipelines may use together, and reserving a fraction (0 to
+     * 1) of that budget to a single pipeline, named by appending the pipeline name to {@link #THREAD_SHARE}.
+     */
+    public static final String MAX_THREADS = "ga.nlp.stanford.maxThreads";
+    public static final String THREAD_SHARE = "ga.nlp.stanford.threadShare.";
+
+    /**
+     * System property sizing (in bytes) the cache of annotation results, disabled when not set or not positive.
+     */
+    public static final String CACHE_MAX_BYTES = "ga.nlp.stanford.cache.maxBytes";
+
+    /**
+     * System property setting the maximum number of characters annotated at once by the chunked annotation.
+     */
+    public static final String CHUNK_SIZE = "ga.nlp.stanford.chunkSize";
+    private static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    /**
+     * System properties sizing the pool converting CoreNLP sentences in parallel, and the number of sentences from
+     * which a document is converted on that pool rather than on the calling thread. The conversion takes its threads
+     * from the {@link ThreadBudget} of the pipeline like the annotation does: the calling thread converts one share of
+     * the sentences and the pool the others, never more in total than the bulkhead of the pipeline allows. The pool
+     * therefore defaults to {@link #MAX_THREADS} minus the calling thread, and a smaller pool only queues the shares.
+     */
+    public static final String EXTRACTION_WORKERS = "ga.nlp.stanford.extraction.workers";
+    public static final String EXTRACTION_PARALLEL_THRESHOLD = "ga.nlp.stanford.extraction.parallelThreshold";
+    private static final int DEFAULT_EXTRACTION_PARALLEL_THRESHOLD = 16;
+
+    /**
+     * System property sizing the pool scoring the sentiment of already annotated sentences.
+     */
+    public static final String SENTIMENT_WORKERS = "ga.nlp.stanford.sentiment.workers";
+
+    /**
+     * System properties sizing (in entries) the cache of tag lookups, disabled when not positive, and choosing
+     * whether tag lookups run the NER of the pipeline. Lookups never run the parsers, sentiment, coref or relations.
+     */
+    public static final String TAG_LOOKUP_CACHE_SIZE = "ga.nlp.stanford.tagLookup.cacheSize";
+    public static final String TAG_LOOKUP_NER = "ga.nlp.stanford.tagLookup.ner";
+    private static final int DEFAULT_TAG_LOOKUP_CACHE_SIZE = 10000;
+    /**
+     * System properties giving the file listing the pipelines to build in the background when the processor starts
+     * (see {@link PreloadConfiguration}), and the number of pipelines built at once in the background.
+     */
+    public static final String PRELOAD = "ga.nlp.stanford.preload";
+    public static final String PRELOAD_WORKERS = "ga.nlp.stanford.preload.workers";
+
+    /**
+     * System properties setting the heap (in bytes) the loaded pipelines may hold together, and the time (in
+     * milliseconds) after which an unused pipeline is unloaded. Unloaded pipelines are loaded again from their
+     * specification on next use. Both are disabled when not set or not positive.
+     */
+    public static final String PIPELINES_MAX_BYTES = "ga.nlp.stanford.pipelines.maxBytes";
+    public static final String PIPELINES_IDLE_TIMEOUT = "ga.nlp.stanford.pipelines.idleTimeout";
+
+    /**
+     * Sentence annotations holding copies of the tokens, whose offsets are moved with the tokens by the chunked
+     * annotation.
+     */
+    private static final List<Class<? extends CoreAnnotation<Tree>>> OFFSET_TREES = Arrays.asList(
+            TreeCoreAnnotations.TreeAnnotation.class,
+            TreeCoreAnnotations.BinarizedTreeAnnotation.class,
+            SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+    private static final List<Class<? extends CoreAnnotation<SemanticGraph>>> OFFSET_GRAPHS = Arrays.asList(
+            SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class,
+            SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class,
+            SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class,
+            SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class,
+            SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class);
+
+    private static final Set<String> NON_LOOKUP_ANNOTATORS = new HashSet<>(Arrays.asList(
+            "parse", "depparse", SENTIMENT, "coref", "dcoref", "mention", "relation", "natlog", "openie"));
+
     protected boolean initiated = false;
+    private volatile BoundedExecutor annotationExecutor;
+    private volatile ExecutorService extractionExecutor;
+    private volatile ExecutorService sentimentExecutor;
+    private volatile Pair<StanfordCoreNLP, StanfordCoreNLP> sentimentPipeline;
+    protected final ThreadBudget threadBudget = new ThreadBudget(Integer.getInteger(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    protected final AnnotationCache annotationCache = createAnnotationCache();
+    protected final TokenLookupCache tokenLookupCache = createTokenLookupCache();
+    protected final ModelRegistry modelRegistry = new ModelRegistry();
+    private final Map<StanfordCoreNLP, StanfordCoreNLP> lookupPipelines = new ConcurrentHashMap<>();
 
     @Override
     public void init() {
+        String preload = System.getProperty(PRELOAD);
+        if (preload == null || preload.trim().isEmpty()) {
+            return;
+        }
+        try {
+            preload(PreloadConfiguration.load(preload.trim()));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not read the pipelines to preload from " + preload, e);
+        }
+    }
+
+    /**
+     * Builds the pipelines in the background and returns immediately. The pipelines are reported as
+     * {@link PipelineStatus#LOADING} until their models are loaded.
+     */
+    public void preload(Collection<PipelineSpecification> pipelineSpecifications) {
+        for (PipelineSpecification pipelineSpecification : pipelineSpecifications) {
+            try {
+                createPipelineAsync(pipelineSpecification);
+            } catch (RuntimeException e) {
+                LOG.warn("Not preloading pipeline " + pipelineSpecification.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the readiness of the pipeline, or null if no pipeline with that name was created
+     */
+    public PipelineStatus getPipelineStatus(String name) {
+        return statuses.get(name);
+    }
+
+    public Map<String, PipelineStatus> getPipelineStatuses() {
+        return new HashMap<>(statuses);
+    }
+
+    public boolean isPipelineReady(String name) {
+        return statuses.get(name) == PipelineStatus.READY;
     }
 
     @Override
@@ -84,69 +241,399 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
 
     public StanfordCoreNLP getPipeline(String name) {
+        try (PipelineLease lease = usePipeline(name)) {
+            return lease.getPipeline();
+        }
+    }
+
+    /**
+     * @return a lease on the named pipeline, loaded again if it was evicted
+     */
+    protected PipelineLease usePipeline(String name) {
         if (name == null || name.isEmpty()) {
             name = TOKENIZER;
             LOG.debug("Using default pipeline: " + name);
         }
-        StanfordCoreNLP pipeline = pipelines.get(name);
-        if (pipeline == null) {
+        PipelineSpecification pipelineSpecification = specifications.get(name);
+        if (pipelineSpecification == null) {
             throw new RuntimeException("Pipeline: " + name + " doesn't exist");
         }
+        return usePipeline(pipelineSpecification);
+    }
 
-        return pipeline;
+    /**
+     * @return a lease on the pipeline, created first if it doesn't exist or loaded again if it was evicted. The
+     * pipeline is not evicted before the lease is closed.
+     */
+    protected PipelineLease usePipeline(PipelineSpecification pipelineSpecification) {
+        String name = pipelineSpecification.getName();
+        // a pipeline evicted right after being loaded is loaded once more
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Creation creation = creations.get(name);
+            if (creation == null) {
+                checkPipelineExistOrCreate(pipelineSpecification);
+                continue;
+            }
+            StanfordCoreNLP pipeline = join(creation.pipeline);
+            if (pipeline != null && creation.acquire()) {
+                eviction.used(name);
+                return new PipelineLease(name, creation, pipeline, getPlan(creation, pipelineSpecification));
+            }
+        }
+        throw new RuntimeException("Pipeline: " + name + " doesn't exist");
     }
 
+    /**
+     * Creates the pipeline if it doesn't exist yet. Concurrent callers share a single build, and wait for a build
+     * already started under the same name whatever its settings. The creations are checked rather than the loaded
+     * pipelines, which briefly keep a pipeline being evicted or removed.
+     */
     protected void checkPipelineExistOrCreate(PipelineSpecification pipelineSpecification) {
-        if (!pipelines.containsKey(pipelineSpecification.getName())) {
-            createPipeline(pipelineSpecification);
+        if (creations.containsKey(pipelineSpecification.getName())) {
+            return;
+        }
+        PipelineSpecification specification = getUpdatedSpecification(pipelineSpecification);
+        Creation creation = new Creation(PipelinePlan.compile(specification));
+        Creation existing = creations.putIfAbsent(specification.getName(), creation);
+        if (existing == null) {
+            buildPipeline(specification, creation);
+        } else {
+            join(existing.pipeline);
         }
     }
 
+    private static AnnotationCache createAnnotationCache() {
+        long maxBytes = Long.getLong(CACHE_MAX_BYTES, 0L);
+        return maxBytes > 0 ? new AnnotationCache(maxBytes) : null;
+    }
+
+    private static TokenLookupCache createTokenLookupCache() {
+        int maxEntries = Integer.getInteger(TAG_LOOKUP_CACHE_SIZE, DEFAULT_TAG_LOOKUP_CACHE_SIZE);
+        return maxEntries > 0 ? new TokenLookupCache(maxEntries) : null;
+    }
+
     @Override
     public AnnotatedText annotateText(String text, PipelineSpecification pipelineSpecification) {
+        if (annotationCache != null) {
+            try (PipelineLease lease = usePipeline(pipelineSpecification)) {
+                // keyed by the plan of the pipeline which annotates, so results are never filed under stale words
+                return annotationCache.get(text, lease.getPlan().getSpecification(), () -> doAnnotateText(text, pipelineSpecification, lease));
+            }
+        }
+        return doAnnotateText(text, pipelineSpecification);
+    }
+
+    protected AnnotatedText doAnnotateText(String text, PipelineSpecification pipelineSpecification) {
+        try (PipelineLease lease = usePipeline(pipelineSpecification)) {
+            return doAnnotateText(text, pipelineSpecification, lease);
+        }
+    }
+
+    private AnnotatedText doAnnotateText(String text, PipelineSpecification pipelineSpecification, PipelineLease lease) {
         Timer timer = Timer.start();
-        String lang = pipelineSpecification.getLanguage();
-        checkPipelineExistOrCreate(pipelineSpecification);
-        timer.lap("pipeline check");
-        AnnotatedText result = new AnnotatedText();
         CoreDocument coreDocument = new CoreDocument(text);
-        StanfordCoreNLP pipeline = pipelines.get(pipelineSpecification.getName());
         long startAnnotation = -System.currentTimeMillis();
-        pipeline.annotate(coreDocument);
-        Annotation document = coreDocument.annotation();
+        threadBudget.run(pipelineSpecification.getName(), 1, () -> {
+            lease.getPipeline().annotate(coreDocument);
+            return null;
+        });
         timer.lap("annotation");
         LOG.info("Time for pipeline annotation (" + pipelineSpecification.getName() + "): " + (System.currentTimeMillis() + startAnnotation) + ". Text length: " + text.length());
-        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-        final AtomicInteger sentenceSequence = new AtomicInteger(0);
-        sentences.forEach((sentence) -> {
-            int sentenceNumber = sentenceSequence.getAndIncrement();
-            final Sentence newSentence = new Sentence(sentence.toString(), sentenceNumber);
 
-            extractTokens(lang, sentence, newSentence, pipelineSpecification.getExcludedNER(), pipelineSpecification);
-            if (pipelineSpecification.hasProcessingStep(STEP_SENTIMENT, false)) {
-                extractSentiment(sentence, newSentence);
+        return buildAnnotatedText(text, pipelineSpecification, lease.getPlan(), coreDocument);
+    }
+
+    /**
+     * Annotates a batch of documents with the given pipeline. The whole batch is handed over to CoreNLP at once so
+     * that the documents are processed by as many threads as configured for the pipeline.
+     *
+     * @param texts                 the documents to annotate
+     * @param pipelineSpecification the pipeline to use
+     * @return the annotated documents, in the same order as <code>texts</code>
+     */
+    public List<AnnotatedText> annotateTexts(List<String> texts, PipelineSpecification pipelineSpecification) {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (PipelineLease lease = usePipeline(pipelineSpecification)) {
+            StanfordCoreNLP pipeline = lease.getPipeline();
+            List<Annotation> documents = texts.stream()
+                    .map(Annotation::new)
+                    .collect(Collectors.toList());
+            int threads = getThreadNumber(pipeline);
+            long startAnnotation = -System.currentTimeMillis();
+            threadBudget.run(pipelineSpecification.getName(), threads, () -> {
+                pipeline.annotate(documents, threads);
+                return null;
+            });
+            LOG.info("Time for batch pipeline annotation (" + pipelineSpecification.getName() + "): " + (System.currentTimeMillis() + startAnnotation) + ". Documents: " + texts.size() + ", threads: " + threads);
+
+            List<AnnotatedText> result = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                CoreDocument coreDocument = new CoreDocument(documents.get(i));
+                coreDocument.wrapAnnotations();
+                result.add(buildAnnotatedText(texts.get(i), pipelineSpecification, lease.getPlan(), coreDocument));
             }
+            return result;
+        }
+    }
 
-            if (pipelineSpecification.hasProcessingStep(STEP_PHRASE, false)) {
-                extractPhrases(sentence, newSentence);
+    /**
+     * Annotates a long text one chunk at a time (see {@link #CHUNK_SIZE}) and hands every sentence to the consumer as
+     * soon as its chunk is processed, so that only one chunk of CoreNLP annotations is kept in memory. Offsets and
+     * sentence numbers are relative to the whole text. Coreference and relations are resolved within a chunk only.
+     *
+     * @return the number of sentences produced
+     */
+    public int annotateTextInChunks(String text, PipelineSpecification pipelineSpecification, Consumer<Sentence> consumer) {
+        return annotateTextInChunks(text, pipelineSpecification, Integer.getInteger(CHUNK_SIZE, DEFAULT_CHUNK_SIZE), consumer);
+    }
+
+    public int annotateTextInChunks(String text, PipelineSpecification pipelineSpecification, int chunkSize, Consumer<Sentence> consumer) {
+        String name = pipelineSpecification.getName();
+        try (PipelineLease lease = usePipeline(pipelineSpecification)) {
+            List<Integer> starts = new TextChunker(chunkSize).split(text);
+            int sentenceCount = 0;
+            for (int i = 0; i < starts.size(); i++) {
+                int begin = starts.get(i);
+                String chunk = text.substring(begin, i + 1 < starts.size() ? starts.get(i + 1) : text.length());
+                if (chunk.trim().isEmpty()) {
+                    continue;
+                }
+                // a long text must not look idle to the eviction
+                eviction.used(name);
+                Annotation document = new Annotation(chunk);
+                threadBudget.run(name, 1, () -> {
+                    lease.getPipeline().annotate(document);
+                    return null;
+                });
+                shiftOffsets(document, begin);
+                CoreDocument coreDocument = new CoreDocument(document);
+                coreDocument.wrapAnnotations();
+                AnnotatedText annotatedChunk = buildAnnotatedText(chunk, pipelineSpecification, lease.getPlan(), coreDocument, sentenceCount);
+                for (Sentence sentence : annotatedChunk.getSentences()) {
+                    consumer.accept(sentence);
+                }
+                sentenceCount += annotatedChunk.getSentences().size();
             }
+            return sentenceCount;
+        }
+    }
 
-            if (pipelineSpecification.hasProcessingStep(STEP_DEPENDENCY, false)) {
-                extractDependencies(sentence, newSentence);
+    /**
+     * Moves the character offsets of every token of an annotated chunk, including the copies held by parse trees
+     * and dependency graphs, by the position of the chunk in the original text.
+     */
+    private void shiftOffsets(Annotation document, int shift) {
+        if (shift == 0) {
+            return;
+        }
+        Set<CoreMap> shifted = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        List<CoreLabel> tokens = document.get(CoreAnnotations.TokensAnnotation.class);
+        if (tokens != null) {
+            tokens.forEach(token -> shiftOffsets(token, shift, shifted));
+        }
+        if (sentences == null) {
+            return;
+        }
+        for (CoreMap sentence : sentences) {
+            shiftOffsets(sentence, shift, shifted);
+            List<CoreLabel> sentenceTokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+            if (sentenceTokens != null) {
+                sentenceTokens.forEach(token -> shiftOffsets(token, shift, shifted));
+            }
+            for (Class<? extends CoreAnnotation<Tree>> key : OFFSET_TREES) {
+                Tree tree = sentence.get(key);
+                if (tree != null) {
+                    tree.getLeaves().forEach(leaf -> {
+                        if (leaf.label() instanceof CoreMap) {
+                            shiftOffsets((CoreMap) leaf.label(), shift, shifted);
+                        }
+                    });
+                }
             }
+            for (Class<? extends CoreAnnotation<SemanticGraph>> key : OFFSET_GRAPHS) {
+                SemanticGraph graph = sentence.get(key);
+                if (graph != null) {
+                    graph.vertexSet().forEach(word -> shiftOffsets(word.backingLabel(), shift, shifted));
+                }
+            }
+        }
+    }
 
-            filterWhitelist(newSentence, pipelineSpecification);
-            result.addSentence(newSentence);
-        });
+    private static void shiftOffsets(CoreMap label, int shift, Set<CoreMap> shifted) {
+        if (!shifted.add(label)) {
+            return;
+        }
+        Integer begin = label.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+        if (begin != null) {
+            label.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, begin + shift);
+        }
+        Integer end = label.get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+        if (end != null) {
+            label.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, end + shift);
+        }
+    }
+
+    /**
+     * Queues the text for annotation on the processor's bounded annotation executor. When the queue is full the
+     * caller waits for at most the configured offer timeout (see {@link #ASYNC_OFFER_TIMEOUT}) before the request
+     * is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public CompletableFuture<AnnotatedText> annotateTextAsync(String text, PipelineSpecification pipelineSpecification) {
+        long timeout = Long.getLong(ASYNC_OFFER_TIMEOUT, DEFAULT_ASYNC_OFFER_TIMEOUT);
+        return annotateTextAsync(text, pipelineSpecification, timeout, TimeUnit.MILLISECONDS);
+    }
 
-        if (pipelineSpecification.hasProcessingStep(STEP_RELATIONS, false)) {
+    public CompletableFuture<AnnotatedText> annotateTextAsync(String text, PipelineSpecification pipelineSpecification, long timeout, TimeUnit unit) {
+        return getAnnotationExecutor().submit(() -> annotateText(text, pipelineSpecification), timeout, unit);
+    }
+
+    protected BoundedExecutor getAnnotationExecutor() {
+        if (annotationExecutor == null) {
+            synchronized (this) {
+                if (annotationExecutor == null) {
+                    int workers = Integer.getInteger(ASYNC_WORKERS, Runtime.getRuntime().availableProcessors());
+                    int queueSize = Integer.getInteger(ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+                    LOG.info("Starting asynchronous annotation executor with " + workers + " workers and a queue of " + queueSize);
+                    annotationExecutor = new BoundedExecutor("stanford-annotation", workers, queueSize);
+                }
+            }
+        }
+        return annotationExecutor;
+    }
+
+    protected AnnotatedText buildAnnotatedText(String text, PipelineSpecification pipelineSpecification, PipelinePlan plan, CoreDocument coreDocument) {
+        return buildAnnotatedText(text, pipelineSpecification, plan, coreDocument, 0);
+    }
+
+    protected AnnotatedText buildAnnotatedText(String text, PipelineSpecification pipelineSpecification, PipelinePlan plan, CoreDocument coreDocument, int firstSentenceNumber) {
+        String lang = pipelineSpecification.getLanguage();
+        AnnotatedText result = new AnnotatedText();
+        Annotation document = coreDocument.annotation();
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        if (sentences.size() < Integer.getInteger(EXTRACTION_PARALLEL_THRESHOLD, DEFAULT_EXTRACTION_PARALLEL_THRESHOLD)) {
+            for (int i = 0; i < sentences.size(); i++) {
+                result.addSentence(extractSentence(lang, sentences.get(i), firstSentenceNumber + i, plan));
+            }
+        } else {
+            String name = pipelineSpecification.getName();
+            int threads = Math.min(threadBudget.getLimit(name), sentences.size());
+            Sentence[] extracted = threadBudget.run(name, threads, () -> extractSentences(lang, sentences, firstSentenceNumber, plan, threads));
+            // added in sentence order, exactly as in the sequential case
+            for (Sentence sentence : extracted) {
+                result.addSentence(sentence);
+            }
+        }
+
+        if (plan.hasRelations()) {
             extractRelationship(result, sentences, document);
         }
-        timer.lap("extractRels");
 
         return extendAnnotation(text, lang, pipelineSpecification, result, coreDocument, document, sentences);
     }
 
+    /**
+     * Converts the sentences on <code>threads</code> threads, the calling one included: thread <code>k</code>
+     * converts every sentence whose index is <code>k</code> modulo <code>threads</code>.
+     */
+    private Sentence[] extractSentences(String lang, List<CoreMap> sentences, int firstSentenceNumber, PipelinePlan plan, int threads) {
+        Sentence[] extracted = new Sentence[sentences.size()];
+        List<CompletableFuture<Void>> stripes = new ArrayList<>(threads - 1);
+        for (int stripe = 1; stripe < threads; stripe++) {
+            int first = stripe;
+            stripes.add(CompletableFuture.runAsync(() -> extractStripe(lang, sentences, firstSentenceNumber, plan, first, threads, extracted), getExtractionExecutor()));
+        }
+        extractStripe(lang, sentences, firstSentenceNumber, plan, 0, threads, extracted);
+        stripes.forEach(StanfordTextProcessor::join);
+        return extracted;
+    }
+
+    private void extractStripe(String lang, List<CoreMap> sentences, int firstSentenceNumber, PipelinePlan plan, int first, int step, Sentence[] extracted) {
+        for (int i = first; i < sentences.size(); i += step) {
+            extracted[i] = extractSentence(lang, sentences.get(i), firstSentenceNumber + i, plan);
+        }
+    }
+
+    protected Sentence extractSentence(String lang, CoreMap sentence, int sentenceNumber, PipelinePlan plan) {
+        final Sentence newSentence = new Sentence(sentence.toString(), sentenceNumber);
+
+        extractTokens(lang, sentence, newSentence, plan);
+        if (plan.hasSentiment()) {
+            extractSentiment(sentence, newSentence);
+        }
+
+        if (plan.hasPhrase()) {
+            extractPhrases(sentence, newSentence);
+        }
+
+        if (plan.hasDependency()) {
+            extractDependencies(sentence, newSentence);
+        }
+
+        return newSentence;
+    }
+
+    /**
+     * @return the plan compiled when the pipeline was created, or a new one if the given specification has
+     * different settings than the one the pipeline was created with. After {@link #updateStopWords} the plan of the
+     * update is used for the specifications the pipeline was created with as well.
+     */
+    private PipelinePlan getPlan(Creation creation, PipelineSpecification pipelineSpecification) {
+        if (isPlanOf(creation.plan, pipelineSpecification)) {
+            return creation.plan;
+        }
+        return PipelinePlan.compile(pipelineSpecification);
+    }
+
+    /**
+     * @return the specification with the words of the last {@link #updateStopWords} of the pipeline, if any, so that
+     * an evicted pipeline is not loaded again with the words it was created with
+     */
+    private PipelineSpecification getUpdatedSpecification(PipelineSpecification pipelineSpecification) {
+        if (!updated.contains(pipelineSpecification.getName())) {
+            return pipelineSpecification;
+        }
+        PipelineSpecification specification = specifications.get(pipelineSpecification.getName());
+        if (specification == null || !PipelinePlan.compile(specification).hasSameModels(pipelineSpecification)) {
+            return pipelineSpecification;
+        }
+        return specification;
+    }
+
+    private boolean isPlanOf(PipelinePlan plan, PipelineSpecification pipelineSpecification) {
+        return plan.isCompiledFrom(pipelineSpecification)
+                || updated.contains(pipelineSpecification.getName()) && plan.hasSameModels(pipelineSpecification);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    protected ExecutorService getExtractionExecutor() {
+        if (extractionExecutor == null) {
+            synchronized (this) {
+                if (extractionExecutor == null) {
+                    int workers = Integer.getInteger(EXTRACTION_WORKERS, Math.max(1, threadBudget.getTotalThreads() - 1));
+                    extractionExecutor = Executors.newFixedThreadPool(workers, new NamedThreadFactory("stanford-extraction"));
+                }
+            }
+        }
+        return extractionExecutor;
+    }
+
+    protected int getThreadNumber(StanfordCoreNLP pipeline) {
+        return Integer.parseInt(pipeline.getProperties().getProperty("threads", "1"));
+    }
+
     protected AnnotatedText extendAnnotation(String text, String lang, PipelineSpecification pipelineSpecification, AnnotatedText annotatedText, CoreDocument coreDocument, Annotation document, List<CoreMap> sentences) {
         return annotatedText;
     }
@@ -179,10 +666,84 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         if (tree == null) {
             return;
         }
-        Set<PhraseHolder> extractedPhrases = inspectSubTree(tree);
-        extractedPhrases.stream().forEach((holder) -> {
-            newSentence.addPhraseOccurrence(holder.getBeginPosition(), holder.getEndPosition(), new Phrase(holder.getPhrase()));
-        });
+        List<Tree> leaves = tree.getLeaves();
+        int[] begins = new int[leaves.size()];
+        int[] ends = new int[leaves.size()];
+        for (int i = 0; i < leaves.size(); i++) {
+            Label label = leaves.get(i).label();
+            begins[i] = label instanceof HasOffset ? ((HasOffset) label).beginPosition() : -1;
+            ends[i] = label instanceof HasOffset ? ((HasOffset) label).endPosition() : -1;
+        }
+        StringBuilder phrase = new StringBuilder();
+        for (long span : collectPhraseSpans(tree, leaves.size())) {
+            int first = (int) (span >>> 32);
+            int last = (int) span;
+            phrase.setLength(0);
+            phrase.append(leaves.get(first).value());
+            for (int i = first + 1; i <= last; i++) {
+                phrase.append(' ').append(leaves.get(i).value());
+            }
+            newSentence.addPhraseOccurrence(begins[first], ends[last], new Phrase(phrase.toString()));
+        }
+    }
+
+    /**
+     * Walks the tree once and returns the spans of every noun phrase and of every single leaf, as the index of
+     * their first leaf and of their last leaf packed in a long. The spans are sorted and distinct.
+     */
+    protected long[] collectPhraseSpans(Tree tree, int leafCount) {
+        long[] spans = new long[leafCount * 2 + 1];
+        int size = 0;
+        int[] starts = new int[16];
+        int depth = 0;
+        int leaf = 0;
+        Deque<Tree> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Tree node = stack.pop();
+            if (node == END_OF_PHRASE) {
+                int start = starts[--depth];
+                if (start < leaf) {
+                    if (size == spans.length) {
+                        spans = Arrays.copyOf(spans, size * 2);
+                    }
+                    spans[size++] = ((long) start << 32) | (leaf - 1);
+                }
+                continue;
+            }
+            if (isNounPhrase(node)) {
+                if (depth == starts.length) {
+                    starts = Arrays.copyOf(starts, depth * 2);
+                }
+                starts[depth++] = leaf;
+                stack.push(END_OF_PHRASE);
+            }
+            if (node.isLeaf()) {
+                if (size == spans.length) {
+                    spans = Arrays.copyOf(spans, size * 2);
+                }
+                spans[size++] = ((long) leaf << 32) | leaf;
+                leaf++;
+            } else {
+                Tree[] children = node.children();
+                for (int i = children.length - 1; i >= 0; i--) {
+                    stack.push(children[i]);
+                }
+            }
+        }
+        Arrays.sort(spans, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || spans[distinct - 1] != spans[i]) {
+                spans[distinct++] = spans[i];
+            }
+        }
+        return Arrays.copyOf(spans, distinct);
+    }
+
+    private static boolean isNounPhrase(Tree node) {
+        String value = node.value();
+        return value != null && (value.equalsIgnoreCase("NP") || value.equalsIgnoreCase("NP-TMP"));
     }
 
     protected void extractSentiment(CoreMap sentence, final Sentence newSentence) {
@@ -190,126 +751,65 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         newSentence.setSentiment(score);
     }
 
-    protected void extractTokens(String lang, CoreMap sentence, final Sentence newSentence, List<String> excludedNER, PipelineSpecification pipelineSpecification) {
+    protected void extractTokens(String lang, CoreMap sentence, final Sentence newSentence, PipelinePlan plan) {
         List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+        boolean withNER = plan.hasNER();
         TokenHolder currToken = new TokenHolder();
         currToken.setNe(backgroundSymbol);
         currToken.setPos("");
-        tokens.stream()
-                .filter((token) -> (token != null && token.get(CoreAnnotations.LemmaAnnotation.class) != null))
-                .map((token) -> {
-                    //
-                    String tokenId = newSentence.getId() + token.beginPosition() + token.endPosition() + token.lemma();
-                    String currentNe = backgroundSymbol;
-                    if (pipelineSpecification.hasProcessingStep(STEP_NER, true) || pipelineSpecification.hasProcessingStep("customNER")) {
-                        String ann = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-                        currentNe = StringUtils.getNotNullString(ann);
-                    }
-                    String currentPOS = StringUtils.getNotNullString(token.get(CoreAnnotations.PartOfSpeechAnnotation.class));
-
-                    if (!checkLemmaIsValid(token.get(CoreAnnotations.LemmaAnnotation.class)) && currentNe.equals(backgroundSymbol)) {
-                        if (currToken.getToken().length() > 0) {
-                            Tag newTag = new Tag(currToken.getToken(), lang, currToken.getOriginalValue());
-                            if (!excludedNER.contains(currToken.getNe())) {
-                                newTag.setNe(Arrays.asList(currToken.getNe()));
-                                newTag.setPos(Arrays.asList(currToken.getPos()));
-                            }
-                            newSentence.addTagOccurrence(currToken.getBeginPosition(),
-                                    currToken.getEndPosition(),
-                                    currToken.getOriginalValue(),
-                                    newSentence.addTag(newTag),
-                                    getTokenIdsToUse(tokenId, currToken.getTokenIds()));
-                            currToken.reset();
-                        }
-                    } else if (currentNe.equals(backgroundSymbol)
-                            && currToken.getNe().equals(backgroundSymbol)) {
-                        Tag tag = getTag(lang, token);
-                        if (tag != null) {
-                            newSentence.addTagOccurrence(token.beginPosition(),
-                                    token.endPosition(),
-                                    token.originalText(),
-                                    newSentence.addTag(tag),
-                                    Arrays.asList(tokenId));
-                        }
-                    } else if (currentNe.equals(backgroundSymbol)
-                            && !currToken.getNe().equals(backgroundSymbol)) {
-                        if (currToken.getToken().length() > 0) {
-                            Tag newTag = new Tag(currToken.getToken(), lang, currToken.getOriginalValue());
-                            if (!excludedNER.contains(currToken.getNe())) {
-                                newTag.setNe(Arrays.asList(currToken.getNe()));
-                                newTag.setPos(Arrays.asList(currToken.getPos()));
-                            }
-                            newSentence.addTagOccurrence(currToken.getBeginPosition(),
-                                    currToken.getEndPosition(),
-                                    currToken.getOriginalValue(),
-                                    newSentence.addTag(newTag),
-                                    getTokenIdsToUse(tokenId, currToken.getTokenIds()));
-                        }
-                        currToken.reset();
-                        Tag tag = getTag(lang, token);
-                        if (tag != null) {
-                            newSentence.addTagOccurrence(token.beginPosition(),
-                                    token.endPosition(),
-                                    token.originalText(),
-                                    newSentence.addTag(tag),
-                                    getTokenIdsToUse(tokenId, currToken.getTokenIds()));
-                        }
-                    } else if (!currentNe.equals(currToken.getNe())
-                            && !currToken.getNe().equals(backgroundSymbol)) {
-                        if (currToken.getToken().length() > 0) {
-                            Tag tag = new Tag(currToken.getToken(), lang, currToken.getOriginalValue());
-                            if (!excludedNER.contains(currToken.getNe())) {
-                                tag.setNe(Arrays.asList(currToken.getNe()));
-                                tag.setPos(Arrays.asList(currToken.getPos()));
-                            }
-                            newSentence.addTagOccurrence(currToken.getBeginPosition(),
-                                    currToken.getEndPosition(),
-                                    currToken.getOriginalValue(),
-                                    newSentence.addTag(tag),
-                                    getTokenIdsToUse(tokenId, currToken.getTokenIds()));
-                        }
-                        currToken.reset();
-                        currToken.updateTokenAndTokenId(
-                                StringUtils.getNotNullString(token.get(CoreAnnotations.OriginalTextAnnotation.class)),
-                                StringUtils.getNotNullString(token.originalText()),
-                                tokenId);
-                        currToken.setBeginPosition(token.beginPosition());
-                        currToken.setEndPosition(token.endPosition());
-                    } else if (!currentNe.equals(backgroundSymbol)
-                            && currToken.getNe().equals(backgroundSymbol)) {
-                        currToken.updateTokenAndTokenId(
-                                StringUtils.getNotNullString(token.get(CoreAnnotations.OriginalTextAnnotation.class)),
-                                StringUtils.getNotNullString(token.originalText()),
-                                tokenId);
-                        currToken.setBeginPosition(token.beginPosition());
-                        currToken.setEndPosition(token.endPosition());
-                    } else {
-                        // happens for eg when there is a space before a Tag, hence the "Before"
-                        String before;
-                        if (token.keySet().contains(CoreAnnotations.BeforeAnnotation.class)) {
-                            before = StringUtils.getNotNullString(token.get(CoreAnnotations.BeforeAnnotation.class));
-                        } else {
-                            before = " ";
-                        }
-                        String currentText = StringUtils.getNotNullString(token.get(CoreAnnotations.OriginalTextAnnotation.class));
-                        currToken.updateToken(before, before);
-                        currToken.updateTokenAndTokenId(currentText, token.originalText(), tokenId);
-                        currToken.setBeginPosition(token.beginPosition());
-                        currToken.setEndPosition(token.endPosition());
-                    }
+        for (CoreLabel token : tokens) {
+            if (token == null) {
+                continue;
+            }
+            String lemma = token.get(CoreAnnotations.LemmaAnnotation.class);
+            if (lemma == null) {
+                continue;
+            }
+            String tokenId = tokenId(newSentence, token.index());
+            String currentNe = backgroundSymbol;
+            if (withNER) {
+                currentNe = StringUtils.getNotNullString(token.get(CoreAnnotations.NamedEntityTagAnnotation.class));
+            }
+            boolean background = currentNe.equals(backgroundSymbol);
+            String currentPOS = StringUtils.getNotNullString(token.get(CoreAnnotations.PartOfSpeechAnnotation.class));
+
+            if (background && !checkLemmaIsValid(lemma)) {
+                // an invalid lemma closes the pending entity, and is not kept itself
+                if (currToken.hasToken()) {
+                    addMergedTag(lang, newSentence, currToken, plan, tokenId);
+                    currToken.reset();
+                }
+            } else if (background && currToken.isBackground()) {
+                addTag(lang, newSentence, token, plan, tokenId);
+            } else if (background) {
+                // end of an entity followed by a plain token
+                if (currToken.hasToken()) {
+                    addMergedTag(lang, newSentence, currToken, plan, tokenId);
+                }
+                currToken.reset();
+                addTag(lang, newSentence, token, plan, tokenId);
+            } else if (!currToken.isBackground() && !currentNe.equals(currToken.getNe())) {
+                // an entity directly followed by an entity of another type
+                if (currToken.hasToken()) {
+                    addMergedTag(lang, newSentence, currToken, plan, tokenId);
+                }
+                currToken.reset();
+                currToken.start(token, tokenId);
+            } else if (currToken.isBackground()) {
+                currToken.start(token, tokenId);
+            } else {
+                currToken.extend(token, tokenId);
+            }
 
-                    return new Pair<>(currentNe, currentPOS);
-                })
-                .forEach((currentNePOS) -> {
-                    if (!excludedNER.contains(currentNePOS.first)) {
-                        currToken.setNe(currentNePOS.first);
-                        currToken.setPos(currentNePOS.second);
-                    }
-                });
+            if (!plan.isExcludedNE(currentNe)) {
+                currToken.setNe(currentNe);
+                currToken.setPos(currentPOS);
+            }
+        }
 
-        if (currToken.getToken().length() > 0) {
+        if (currToken.hasToken() && isWhitelisted(currToken, plan)) {
             Tag tag = new Tag(currToken.getToken(), lang, currToken.getOriginalValue());
-            tag.setNe(Arrays.asList(currToken.getNe()));
+            tag.setNe(singletonList(currToken.getNe()));
             newSentence.addTagOccurrence(currToken.getBeginPosition(),
                     currToken.getEndPosition(),
                     currToken.getOriginalValue(),
@@ -318,40 +818,72 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         }
     }
 
-    protected void filterWhitelist(Sentence sentence, PipelineSpecification pipelineSpecification) {
-        if (pipelineSpecification.getWhitelist() == null || pipelineSpecification.getWhitelist().split(",").length == 0) {
+    private void addMergedTag(String lang, Sentence newSentence, TokenHolder currToken, PipelinePlan plan, String tokenId) {
+        if (!isWhitelisted(currToken, plan)) {
             return;
         }
+        String originalValue = currToken.getOriginalValue();
+        Tag newTag = new Tag(currToken.getToken(), lang, originalValue);
+        if (!plan.isExcludedNE(currToken.getNe())) {
+            newTag.setNe(singletonList(currToken.getNe()));
+            newTag.setPos(singletonList(currToken.getPos()));
+        }
+        newSentence.addTagOccurrence(currToken.getBeginPosition(),
+                currToken.getEndPosition(),
+                originalValue,
+                newSentence.addTag(newTag),
+                getTokenIdsToUse(tokenId, currToken.getTokenIds()));
+    }
 
-        List<String> whitelist = Arrays.stream(pipelineSpecification.getWhitelist().split(","))
-                .map(String::trim)
-                .map(String::toLowerCase)
-                .collect(Collectors.toList());
+    private void addTag(String lang, Sentence newSentence, CoreLabel token, PipelinePlan plan, String tokenId) {
+        if (!isWhitelisted(token, plan)) {
+            return;
+        }
+        Tag tag = getTag(lang, token);
+        if (tag != null) {
+            newSentence.addTagOccurrence(token.beginPosition(),
+                    token.endPosition(),
+                    token.originalText(),
+                    newSentence.addTag(tag),
+                    Collections.singletonList(tokenId));
+        }
+    }
 
-        List<Integer> positionsToDelete = new ArrayList<>();
-        List<String> tagsToDelete = new ArrayList<>();
-        sentence.getTagOccurrences().keySet().forEach(i -> {
-            TagOccurrence occurrence = (TagOccurrence) sentence.getTagOccurrences().get(i).get(0);
-            if (whitelist.contains(occurrence.getValue().toLowerCase()) || whitelist.contains(occurrence.getElement().getLemma().toLowerCase())) {
-                // ok
-            } else {
-                positionsToDelete.add(i);
-                tagsToDelete.add(occurrence.getElement().getLemma());
-            }
-        });
-        positionsToDelete.forEach(d -> {
-            sentence.getTagOccurrences().remove(d);
-        });
+    /**
+     * Single tokens are checked against the mark set by the {@link WhitelistAnnotator}; the whitelist of the plan is
+     * only used when the pipeline was created without one.
+     */
+    private static boolean isWhitelisted(CoreLabel token, PipelinePlan plan) {
+        if (!plan.hasWhitelist()) {
+            return true;
+        }
+        Boolean whitelisted = token.get(WhitelistAnnotator.class);
+        if (whitelisted != null) {
+            return whitelisted;
+        }
+        return isWhitelisted(token.originalText(), plan) || isWhitelisted(token.lemma(), plan);
+    }
 
-        Iterator<Tag> iterator = sentence.getTags().values().iterator();
-        while (iterator.hasNext()) {
-            Tag tag = iterator.next();
-            if (tagsToDelete.contains(tag.getLemma())) {
-                iterator.remove();
-            }
+    private static boolean isWhitelisted(TokenHolder entity, PipelinePlan plan) {
+        return !plan.hasWhitelist() || isWhitelisted(entity.getOriginalValue(), plan) || isWhitelisted(entity.getToken(), plan);
+    }
+
+    private static boolean isWhitelisted(String word, PipelinePlan plan) {
+        return word != null && plan.isWhitelisted(word.toLowerCase());
+    }
+
+    /**
+     * NE and POS values come from small, fixed vocabularies, so the single value lists set on tags are shared rather
+     * than allocated for every token. The lists are immutable.
+     */
+    protected List<String> singletonList(String value) {
+        if (value == null) {
+            return NULL_SINGLETON;
         }
+        return singletonLists.computeIfAbsent(value, Collections::singletonList);
     }
 
+
     protected void extractDependencies(CoreMap sentence, final Sentence newSentence) {
         SemanticGraph semanticGraph = sentence.get(SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class);
         if (semanticGraph == null) {
@@ -359,34 +891,52 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         }
 
         semanticGraph.getRoots().forEach(root -> {
-            String rootId = newSentence.getId() + root.beginPosition() + root.endPosition() + root.lemma();
+            String rootId = tokenId(newSentence, root.index());
             TypedDependency typedDependency = new TypedDependency(rootId, rootId, "ROOT", null);
             newSentence.addTypedDependency(typedDependency);
         });
 
         for (SemanticGraphEdge edge : semanticGraph.edgeListSorted()) {
-            String sourceId = newSentence.getId() + edge.getSource().beginPosition() + edge.getSource().endPosition() + edge.getSource().lemma();
-            String targetId = newSentence.getId() + edge.getTarget().beginPosition() + edge.getTarget().endPosition() + edge.getTarget().lemma();
+            String sourceId = tokenId(newSentence, edge.getSource().index());
+            String targetId = tokenId(newSentence, edge.getTarget().index());
             TypedDependency typedDependency = new TypedDependency(sourceId, targetId, edge.getRelation().getShortName(), edge.getRelation().getSpecific());
             newSentence.addTypedDependency(typedDependency);
         }
     }
 
+    /**
+     * Identifies a token by its sentence number and its (1-based) index in the sentence, packed into a single long.
+     */
+    public static long tokenKey(int sentenceNumber, int tokenIndex) {
+        return ((long) sentenceNumber << 32) | (tokenIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the token key rendered in base 36, the short form stored with tag occurrences and dependencies
+     */
+    protected String tokenId(Sentence sentence, int tokenIndex) {
+        return Long.toString(tokenKey(sentence.getSentenceNumber(), tokenIndex), Character.MAX_RADIX);
+    }
+
     protected void extractRelationship(AnnotatedText annotatedText, List<CoreMap> sentences, Annotation document) {
         Map<Integer, CorefChain> corefChains = document.get(CorefCoreAnnotations.CorefChainAnnotation.class);
         if (corefChains != null) {
+            // phrase occurrences are indexed by begin and end offset in each sentence, so every lookup below is O(1)
+            List<Sentence> annotatedSentences = annotatedText.getSentences();
+            boolean debug = LOG.isDebugEnabled();
             for (CorefChain chain : corefChains.values()) {
                 CorefChain.CorefMention representative = chain.getRepresentativeMention();
                 int representativeSenteceNumber = representative.sentNum - 1;
                 List<CoreLabel> representativeTokens = sentences.get(representativeSenteceNumber).get(CoreAnnotations.TokensAnnotation.class);
-                System.out.println(representativeTokens.size() + " representative tokens");
-                System.out.println("representative end index is : " + representative.endIndex);
+                if (debug) {
+                    LOG.debug("Coref chain " + chain.getChainID() + ": " + representativeTokens.size() + " representative tokens, representative end index is " + representative.endIndex);
+                }
                 if (representative.endIndex - 1 > representativeTokens.size()) {
                     continue;
                 }
                 int beginPosition = representativeTokens.get(representative.startIndex - 1).beginPosition();
                 int endPosition = representativeTokens.get(representative.endIndex - 2).endPosition();
-                Phrase representativePhraseOccurrence = annotatedText.getSentences().get(representativeSenteceNumber).getPhraseOccurrence(beginPosition, endPosition);
+                Phrase representativePhraseOccurrence = annotatedSentences.get(representativeSenteceNumber).getPhraseOccurrence(beginPosition, endPosition);
                 if (representativePhraseOccurrence == null) {
                     LOG.warn("Representative Phrase not found: " + representative.mentionSpan);
                 }
@@ -397,9 +947,12 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
                     int mentionSentenceNumber = mention.sentNum - 1;
 
                     List<CoreLabel> mentionTokens = sentences.get(mentionSentenceNumber).get(CoreAnnotations.TokensAnnotation.class);
+                    if (mention.endIndex - 1 > mentionTokens.size()) {
+                        continue;
+                    }
                     int beginPositionMention = mentionTokens.get(mention.startIndex - 1).beginPosition();
                     int endPositionMention = mentionTokens.get(mention.endIndex - 2).endPosition();
-                    Phrase mentionPhraseOccurrence = annotatedText.getSentences().get(mentionSentenceNumber).getPhraseOccurrence(beginPositionMention, endPositionMention);
+                    Phrase mentionPhraseOccurrence = annotatedSentences.get(mentionSentenceNumber).getPhraseOccurrence(beginPositionMention, endPositionMention);
                     if (mentionPhraseOccurrence == null) {
                         LOG.warn("Mention Phrase not found: " + mention.mentionSpan);
                     }
@@ -414,20 +967,69 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     @Override
     public AnnotatedText sentiment(AnnotatedText annotatedText) {
-        StanfordCoreNLP pipeline = pipelines.get(SENTIMENT);
-        if (pipeline == null) {
-            throw new RuntimeException("Pipeline: " + SENTIMENT + " doesn't exist");
-        }
-        annotatedText.getSentences().parallelStream().forEach((item) -> {
-            Annotation document = new Annotation(item.getSentence());
-            pipeline.annotate(document);
-            List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-            Optional<CoreMap> sentence = sentences.stream().findFirst();
-            if (sentence != null && sentence.isPresent()) {
-                extractSentiment(sentence.get(), item);
+        try (PipelineLease lease = usePipeline(SENTIMENT)) {
+            StanfordCoreNLP sentimentOnly = getSentimentOnlyPipeline(lease.getPipeline());
+            ExecutorService executor = getSentimentExecutor();
+            List<CompletableFuture<Void>> scored = new ArrayList<>(annotatedText.getSentences().size());
+            for (Sentence item : annotatedText.getSentences()) {
+                scored.add(CompletableFuture.runAsync(() -> threadBudget.run(SENTIMENT, 1, () -> {
+                    Annotation document = new Annotation(item.getSentence());
+                    sentimentOnly.annotate(document);
+                    List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+                    if (sentences != null && !sentences.isEmpty()) {
+                        extractSentiment(sentences.get(0), item);
+                    }
+                    return null;
+                }), executor));
             }
-        });
-        return annotatedText;
+            scored.forEach(StanfordTextProcessor::join);
+            return annotatedText;
+        }
+    }
+
+    /**
+     * The sentences are already split, so they are scored by a pipeline with the same settings as the given one
+     * which keeps each of them as a single sentence and only runs the tokenizer ahead of the parser and the
+     * sentiment model. The pipeline is derived once per sentiment pipeline and shares its models. A sentiment pipeline
+     * already removed or replaced is used as is, since nothing would release the derived one.
+     */
+    protected StanfordCoreNLP getSentimentOnlyPipeline(StanfordCoreNLP pipeline) {
+        Pair<StanfordCoreNLP, StanfordCoreNLP> current = sentimentPipeline;
+        if (current != null && current.first() == pipeline) {
+            return current.second();
+        }
+        synchronized (this) {
+            // releasePipeline clears the derived pipeline under the same lock, after the pipeline left the map
+            if (!pipelines.containsValue(pipeline)) {
+                return pipeline;
+            }
+            if (sentimentPipeline == null || sentimentPipeline.first() != pipeline) {
+                Properties properties = pipeline.getProperties();
+                List<String> annotators = getAnnotators(pipeline);
+                StanfordCoreNLP sentimentOnly = pipeline;
+                if (annotators.contains("parse") && annotators.contains(SENTIMENT)) {
+                    Properties sentimentProperties = new Properties();
+                    sentimentProperties.putAll(properties);
+                    sentimentProperties.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
+                    sentimentProperties.setProperty("ssplit.isOneSentence", "true");
+                    sentimentOnly = modelRegistry.load(sentimentProperties);
+                }
+                sentimentPipeline = new Pair<>(pipeline, sentimentOnly);
+            }
+            return sentimentPipeline.second();
+        }
+    }
+
+    protected ExecutorService getSentimentExecutor() {
+        if (sentimentExecutor == null) {
+            synchronized (this) {
+                if (sentimentExecutor == null) {
+                    int workers = Integer.getInteger(SENTIMENT_WORKERS, Runtime.getRuntime().availableProcessors());
+                    sentimentExecutor = Executors.newFixedThreadPool(workers, new NamedThreadFactory("stanford-sentiment"));
+                }
+            }
+        }
+        return sentimentExecutor;
     }
 
     protected int extractSentiment(CoreMap sentence) {
@@ -442,12 +1044,9 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     @Override
     public Tag annotateSentence(String text, PipelineSpecification pipelineSpecification) {
-        Annotation document = new Annotation(text);
-        pipelines.get(pipelineSpecification.getName()).annotate(document);
-        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-        Optional<CoreMap> sentence = sentences.stream().findFirst();
-        if (sentence.isPresent()) {
-            Optional<Tag> oTag = sentence.get().get(CoreAnnotations.TokensAnnotation.class).stream()
+        List<CoreLabel> tokens = lookupTokens(pipelineSpecification.getName(), text);
+        if (tokens != null) {
+            Optional<Tag> oTag = tokens.stream()
                     .map((token) -> getTag(pipelineSpecification.getLanguage(), token))
                     .filter((tag) -> (tag != null) && checkLemmaIsValid(tag.getLemma()))
                     .findFirst();
@@ -460,37 +1059,133 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     @Override
     public Tag annotateTag(String text, PipelineSpecification pipelineSpecification) {
-        Annotation document = new Annotation(text);
-        pipelines.get(pipelineSpecification.getName()).annotate(document);
-        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-        Optional<CoreMap> sentence = sentences.stream().findFirst();
-        if (sentence.isPresent()) {
-            List<CoreLabel> tokens = sentence.get().get(CoreAnnotations.TokensAnnotation.class);
-            if (tokens != null) {
-                String lang = pipelineSpecification.getLanguage();
-                if (tokens.size() == 1) {
-                    Optional<Tag> oTag = tokens.stream()
-                            .map((token) -> getTag(lang, token))
-                            .filter((tag) -> (tag != null) && checkLemmaIsValid(tag.getLemma()))
-                            .findFirst();
-                    if (oTag.isPresent()) {
-                        return oTag.get();
-                    }
-                } else if (tokens.size() > 1) {
-                    Tag tag = new Tag(text, lang);
-                    tag.setPos(Arrays.asList());
-                    tag.setNe(Arrays.asList());
-                    //LOG.info("POS: " + tag.getPos() + " ne: " + tag.getNe() + " lemma: " + tag.getLemma());
-                    return tag;
+        List<CoreLabel> tokens = lookupTokens(pipelineSpecification.getName(), text);
+        if (tokens != null) {
+            String lang = pipelineSpecification.getLanguage();
+            if (tokens.size() == 1) {
+                Optional<Tag> oTag = tokens.stream()
+                        .map((token) -> getTag(lang, token))
+                        .filter((tag) -> (tag != null) && checkLemmaIsValid(tag.getLemma()))
+                        .findFirst();
+                if (oTag.isPresent()) {
+                    return oTag.get();
                 }
+            } else if (tokens.size() > 1) {
+                Tag tag = new Tag(text, lang);
+                tag.setPos(Arrays.asList());
+                tag.setNe(Arrays.asList());
+                //LOG.info("POS: " + tag.getPos() + " ne: " + tag.getNe() + " lemma: " + tag.getLemma());
+                return tag;
             }
         }
         return null;
     }
 
+    /**
+     * @return the tokens of the first sentence of the text, as annotated by the lookup pipeline derived from the
+     * named pipeline, or null if the text has no sentence
+     */
+    protected List<CoreLabel> lookupTokens(String name, String text) {
+        if (tokenLookupCache != null) {
+            List<CoreLabel> cached = tokenLookupCache.get(name, text);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+        }
+        Annotation document = new Annotation(text);
+        try (PipelineLease lease = usePipeline(name)) {
+            StanfordCoreNLP lookup = getLookupPipeline(lease.getPipeline());
+            threadBudget.run(lease.getName(), 1, () -> {
+                lookup.annotate(document);
+                return null;
+            });
+        }
+        return cacheTokens(name, text, document);
+    }
+
+    /**
+     * Looks the texts up like {@link #lookupTokens(String, String)}, annotating the ones missing from the cache
+     * together on the threads of the pipeline.
+     */
+    protected Map<String, List<CoreLabel>> lookupTokens(String name, Collection<String> texts) {
+        Map<String, List<CoreLabel>> result = new LinkedHashMap<>();
+        List<String> missingTexts = new ArrayList<>();
+        List<Annotation> missing = new ArrayList<>();
+        for (String text : texts) {
+            if (result.containsKey(text)) {
+                continue;
+            }
+            List<CoreLabel> cached = tokenLookupCache != null ? tokenLookupCache.get(name, text) : null;
+            if (cached == null) {
+                missingTexts.add(text);
+                missing.add(new Annotation(text));
+            }
+            result.put(text, cached == null || cached.isEmpty() ? null : cached);
+        }
+        if (!missing.isEmpty()) {
+            try (PipelineLease lease = usePipeline(name)) {
+                StanfordCoreNLP pipeline = lease.getPipeline();
+                StanfordCoreNLP lookup = getLookupPipeline(pipeline);
+                int threads = getThreadNumber(pipeline);
+                threadBudget.run(lease.getName(), threads, () -> {
+                    lookup.annotate(missing, threads);
+                    return null;
+                });
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                result.put(missingTexts.get(i), cacheTokens(name, missingTexts.get(i), missing.get(i)));
+            }
+        }
+        return result;
+    }
+
+    private List<CoreLabel> cacheTokens(String name, String text, Annotation document) {
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        List<CoreLabel> tokens = null;
+        if (sentences != null && !sentences.isEmpty()) {
+            tokens = sentences.get(0).get(CoreAnnotations.TokensAnnotation.class);
+        }
+        if (tokenLookupCache != null) {
+            tokenLookupCache.put(name, text, tokens != null ? tokens : Collections.emptyList());
+        }
+        return tokens;
+    }
+
+    /**
+     * Tag lookups only need tokens, part of speech, lemmas, stopwords and, unless disabled, named entities, so they
+     * run a pipeline derived from the given one without the other annotators. The models are shared with the given
+     * pipeline. A pipeline already removed or replaced is used as is, since nothing would release the derived one.
+     */
+    protected StanfordCoreNLP getLookupPipeline(StanfordCoreNLP pipeline) {
+        // the pipeline leaves the pipelines map before releasePipeline drops its entry here, and computeIfAbsent
+        // excludes that removal, so a lookup pipeline is either derived before the release or not at all
+        StanfordCoreNLP lookup = lookupPipelines.computeIfAbsent(pipeline, (source) -> {
+            if (!pipelines.containsValue(source)) {
+                return null;
+            }
+            boolean ner = Boolean.parseBoolean(System.getProperty(TAG_LOOKUP_NER, "true"));
+            List<String> annotators = getAnnotators(source);
+            List<String> lookupAnnotators = annotators.stream()
+                    .filter((annotator) -> !NON_LOOKUP_ANNOTATORS.contains(annotator))
+                    .filter((annotator) -> ner || !"ner".equals(annotator))
+                    .collect(Collectors.toList());
+            if (lookupAnnotators.size() == annotators.size()) {
+                return source;
+            }
+            Properties properties = new Properties();
+            properties.putAll(source.getProperties());
+            properties.setProperty("annotators", String.join(", ", lookupAnnotators));
+            return modelRegistry.load(properties);
+        });
+        return lookup != null ? lookup : pipeline;
+    }
+
+    protected static List<String> getAnnotators(StanfordCoreNLP pipeline) {
+        return Arrays.asList(pipeline.getProperties().getProperty("annotators", "").trim().split("\\s*,\\s*"));
+    }
+
     protected Tag getTag(String lang, CoreLabel token) {
-        Pair<Boolean, Boolean> stopword = token.get(StopwordAnnotator.class);
-        if (stopword != null && (stopword.first() || stopword.second())) {
+        if (StopwordAnnotator.isStopword(token)) {
             return null;
         }
         String pos = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
@@ -512,91 +1207,149 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         }
 
         Tag tag = new Tag(lemma, lang, token.originalText());
-        tag.setPos(Arrays.asList(pos));
-        tag.setNe(Arrays.asList(ne));
+        tag.setPos(singletonList(pos));
+        tag.setNe(singletonList(ne));
         //LOG.info("POS: " + pos + " ne: " + ne + " lemma: " + lemma);
         return tag;
     }
 
     @Override
     public boolean checkLemmaIsValid(String value) {
-        Matcher match = patternCheck.matcher(value);
-
-        return match.find();
-    }
-
-    protected Set<PhraseHolder> inspectSubTree(Tree subTree) {
-        Set<PhraseHolder> result = new TreeSet<>();
-        if (subTree.value().equalsIgnoreCase("NP") || subTree.value().equalsIgnoreCase("NP-TMP")) {// set your rule of defining Phrase here
-            PhraseHolder pHolder = new PhraseHolder();
-            List<Tree> leaves = subTree.getLeaves(); //leaves correspond to the tokens
-            leaves.stream().map((leaf) -> leaf.yieldWords()).map((words) -> {
-                pHolder.setBeginPosition(words.get(0).beginPosition());
-                pHolder.setEndPosition(words.get(words.size() - 1).endPosition());
-                return words;
-            }).forEach((words) -> {
-                words.stream().forEach((word) -> {
-                    pHolder.updatePhrase(word.word());
-                    pHolder.updatePhrase(" ");
-                });
-            });
-            result.add(pHolder);
-            subTree.getChildrenAsList().stream().filter((child) -> (!child.equals(subTree))).forEach((child) -> {
-                result.addAll(inspectSubTree(child));
-            });
-        } else if (subTree.isLeaf()) {
-            PhraseHolder pHolder = new PhraseHolder();
-            ArrayList<Word> words = subTree.yieldWords();
-            pHolder.setBeginPosition(words.get(0).beginPosition());
-            pHolder.setEndPosition(words.get(words.size() - 1).endPosition());
-            words.stream().forEach((word) -> {
-                pHolder.updatePhrase(word.word());
-                pHolder.updatePhrase(" ");
-            });
-            result.add(pHolder);
-        } else {
-            List<Tree> children = subTree.getChildrenAsList();
-            children.stream().forEach((child) -> {
-                result.addAll(inspectSubTree(child));
-            });
-        }
-        return result;
+        return LemmaChecker.isValid(value);
     }
 
     @Override
     public List<Tag> annotateTags(String text, PipelineSpecification pipelineSpecification) {
-        return annotateTagsAux(text, pipelineSpecification.getLanguage(), pipelines.get(pipelineSpecification.getName()));
+        return getTags(lookupTokens(pipelineSpecification.getName(), text), pipelineSpecification.getLanguage());
     }
 
     @Override
     public List<Tag> annotateTags(String text, String lang) {
-        return annotateTagsAux(text, lang, pipelines.get(TOKENIZER));
+        return getTags(lookupTokens(TOKENIZER, text), lang);
     }
 
-    private List<Tag> annotateTagsAux(String text, String lang, StanfordCoreNLP stanfordCoreNLP) {
+    /**
+     * Batch version of {@link #annotateTags(String, PipelineSpecification)}.
+     *
+     * @return the tags of each distinct text, in the order of the given texts
+     */
+    public Map<String, List<Tag>> annotateTags(Collection<String> texts, PipelineSpecification pipelineSpecification) {
+        return annotateTagsAux(texts, pipelineSpecification.getName(), pipelineSpecification.getLanguage());
+    }
+
+    /**
+     * Batch version of {@link #annotateTags(String, String)}.
+     */
+    public Map<String, List<Tag>> annotateTags(Collection<String> texts, String lang) {
+        return annotateTagsAux(texts, TOKENIZER, lang);
+    }
+
+    private Map<String, List<Tag>> annotateTagsAux(Collection<String> texts, String name, String lang) {
+        Map<String, List<Tag>> result = new LinkedHashMap<>();
+        lookupTokens(name, texts).forEach((text, tokens) -> result.put(text, getTags(tokens, lang)));
+        return result;
+    }
+
+    private List<Tag> getTags(List<CoreLabel> tokens, String lang) {
         List<Tag> result = new ArrayList<>();
-        Annotation document = new Annotation(text);
-        stanfordCoreNLP.annotate(document);
-        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
-        Optional<CoreMap> sentence = sentences.stream().findFirst();
-        if (sentence.isPresent()) {
-            Stream<Tag> oTags = sentence.get().get(CoreAnnotations.TokensAnnotation.class).stream()
+        if (tokens != null) {
+            tokens.stream()
                     .map((token) -> getTag(lang, token))
-                    .filter((tag) -> (tag != null) && checkLemmaIsValid(tag.getLemma()));
-            oTags.forEach((tag) -> result.add(tag));
+                    .filter((tag) -> (tag != null) && checkLemmaIsValid(tag.getLemma()))
+                    .forEach(result::add);
         }
         return result;
     }
 
+    /**
+     * A pipeline being built or built, with the settings it was requested with, and the number of leases held on it.
+     */
+    private static final class Creation {
+
+        private final PipelinePlan plan;
+        private final CompletableFuture<StanfordCoreNLP> pipeline = new CompletableFuture<>();
+        private int leases;
+        private boolean evicted;
+
+        private Creation(PipelinePlan plan) {
+            this.plan = plan;
+        }
+
+        /**
+         * @return false if the pipeline was evicted, and has to be loaded again
+         */
+        private synchronized boolean acquire() {
+            if (evicted) {
+                return false;
+            }
+            leases++;
+            return true;
+        }
+
+        private synchronized void release() {
+            leases--;
+        }
+
+        /**
+         * @return false if the pipeline is in use, in which case it is kept
+         */
+        private synchronized boolean evict() {
+            if (leases > 0) {
+                return false;
+            }
+            evicted = true;
+            return true;
+        }
+    }
+
+    /**
+     * A pipeline in use, with the plan of the same creation, so that a document annotated while the stopwords are
+     * updated is converted with the plan of the pipeline which annotated it. The pipeline is not evicted while
+     * leased, and counts as used again when the lease is closed.
+     */
+    protected final class PipelineLease implements AutoCloseable {
+
+        private final String name;
+        private final Creation creation;
+        private final StanfordCoreNLP pipeline;
+        private final PipelinePlan plan;
+
+        private PipelineLease(String name, Creation creation, StanfordCoreNLP pipeline, PipelinePlan plan) {
+            this.name = name;
+            this.creation = creation;
+            this.pipeline = pipeline;
+            this.plan = plan;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public StanfordCoreNLP getPipeline() {
+            return pipeline;
+        }
+
+        public PipelinePlan getPlan() {
+            return plan;
+        }
+
+        @Override
+        public void close() {
+            creation.release();
+            eviction.used(name);
+        }
+    }
+
     class TokenHolder {
 
         private String ne;
+        private boolean background;
         private String pos;
-        private StringBuilder sb;
-        private StringBuilder sbOriginalValue;
+        private final StringBuilder sb = new StringBuilder();
+        private final StringBuilder sbOriginalValue = new StringBuilder();
         private int beginPosition;
         private int endPosition;
-        private List<String> tokenIds = new ArrayList<>();
+        private final List<String> tokenIds = new ArrayList<>();
 
         public TokenHolder() {
             reset();
@@ -606,6 +1359,14 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
             return ne;
         }
 
+        public boolean isBackground() {
+            return background;
+        }
+
+        public boolean hasToken() {
+            return sb.length() > 0;
+        }
+
         public String getToken() {
             return sb.toString();
         }
@@ -624,6 +1385,7 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
         public void setNe(String ne) {
             this.ne = ne;
+            this.background = backgroundSymbol.equals(ne);
         }
 
         public void updateToken(String tknStr, String originalValue) {
@@ -636,6 +1398,33 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
             tokenIds.add(tokenId);
         }
 
+        /**
+         * Starts a new entity with the token.
+         */
+        public void start(CoreLabel token, String tokenId) {
+            String text = StringUtils.getNotNullString(token.get(CoreAnnotations.OriginalTextAnnotation.class));
+            updateTokenAndTokenId(text, text, tokenId);
+            setBeginPosition(token.beginPosition());
+            setEndPosition(token.endPosition());
+        }
+
+        /**
+         * Appends the token to the current entity, keeping the text found between the two (usually a space).
+         */
+        public void extend(CoreLabel token, String tokenId) {
+            String before;
+            if (token.containsKey(CoreAnnotations.BeforeAnnotation.class)) {
+                before = StringUtils.getNotNullString(token.get(CoreAnnotations.BeforeAnnotation.class));
+            } else {
+                before = " ";
+            }
+            String text = StringUtils.getNotNullString(token.get(CoreAnnotations.OriginalTextAnnotation.class));
+            updateToken(before, before);
+            updateTokenAndTokenId(text, token.originalText(), tokenId);
+            setBeginPosition(token.beginPosition());
+            setEndPosition(token.endPosition());
+        }
+
         public List<String> getTokenIds() {
             return tokenIds;
         }
@@ -651,8 +1440,8 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         }
 
         public final void reset() {
-            sb = new StringBuilder();
-            sbOriginalValue = new StringBuilder();
+            sb.setLength(0);
+            sbOriginalValue.setLength(0);
             beginPosition = -1;
             endPosition = -1;
             tokenIds.clear();
@@ -667,107 +1456,225 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         }
     }
 
-    class PhraseHolder implements Comparable<PhraseHolder> {
+    /**
+     * @return the pipelines, including the evicted ones which are loaded again on next use
+     */
+    @Override
+    public List<String> getPipelines() {
+        Set<String> names = new LinkedHashSet<>(pipelines.keySet());
+        names.addAll(specifications.keySet());
+        return new ArrayList<>(names);
+    }
 
-        private StringBuilder sb;
-        private int beginPosition;
-        private int endPosition;
+    /**
+     * @return the estimated heap (in bytes) held by each annotator of the pipeline, by annotator name, or an empty
+     * map if the pipeline is not loaded. Annotators shared between pipelines are reported for each of them.
+     */
+    public Map<String, Long> getPipelineFootprint(String name) {
+        StanfordCoreNLP pipeline = pipelines.get(name);
+        return pipeline != null ? modelRegistry.getFootprint(pipeline) : new LinkedHashMap<>();
+    }
 
-        public PhraseHolder() {
-            reset();
-        }
+    /**
+     * @return the footprint of every loaded pipeline, see {@link #getPipelineFootprint(String)}
+     */
+    public Map<String, Map<String, Long>> getPipelineFootprints() {
+        Map<String, Map<String, Long>> footprints = new TreeMap<>();
+        pipelines.forEach((name, pipeline) -> footprints.put(name, modelRegistry.getFootprint(pipeline)));
+        return footprints;
+    }
 
-        public String getPhrase() {
-            if (sb == null) {
-                return " - ";
-            }
-            return sb.toString();
-        }
+    /**
+     * @return the estimated heap (in bytes) held by the annotators of all the loaded pipelines, each counted once
+     */
+    public long getModelsFootprint() {
+        return modelRegistry.getTotalBytes();
+    }
 
-        public int getBeginPosition() {
-            return beginPosition;
+    public boolean checkPipeline(String name) {
+        return pipelines.containsKey(name) || specifications.containsKey(name);
+    }
+
+    /**
+     * Creates the pipeline on the calling thread. Callers creating a pipeline that is already being built with the
+     * same settings wait for that build instead of loading the models again.
+     */
+    @Override
+    public void createPipeline(PipelineSpecification specification) {
+        PipelineSpecification pipelineSpecification = getUpdatedSpecification(specification);
+        Creation creation = new Creation(PipelinePlan.compile(pipelineSpecification));
+        Creation existing = creations.putIfAbsent(pipelineSpecification.getName(), creation);
+        if (existing == null) {
+            buildPipeline(pipelineSpecification, creation);
+        } else {
+            checkSameSettings(existing, pipelineSpecification);
+            join(existing.pipeline);
         }
+    }
 
-        public int getEndPosition() {
-            return endPosition;
+    /**
+     * Starts building the pipeline in the background and returns immediately, so that loading the models doesn't
+     * hold the caller, for instance a transaction, open. Follow the build with {@link #getPipelineStatus(String)}.
+     *
+     * @return the status of the pipeline, {@link PipelineStatus#LOADING} unless it was already built
+     */
+    public PipelineStatus createPipelineAsync(PipelineSpecification specification) {
+        PipelineSpecification pipelineSpecification = getUpdatedSpecification(specification);
+        String name = pipelineSpecification.getName();
+        Creation creation = new Creation(PipelinePlan.compile(pipelineSpecification));
+        Creation existing = creations.putIfAbsent(name, creation);
+        if (existing != null) {
+            checkSameSettings(existing, pipelineSpecification);
+            return statuses.getOrDefault(name, PipelineStatus.LOADING);
         }
+        statuses.put(name, PipelineStatus.LOADING);
+        getLoaderExecutor().execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                buildPipeline(pipelineSpecification, creation);
+                LOG.info("Loaded pipeline " + name + " in " + (System.currentTimeMillis() - start) + "ms");
+            } catch (RuntimeException e) {
+                LOG.error("Could not load pipeline " + name, e);
+            }
+        });
+        return PipelineStatus.LOADING;
+    }
 
-        public void updatePhrase(String tknStr) {
-            this.sb.append(tknStr);
+    private void checkSameSettings(Creation existing, PipelineSpecification pipelineSpecification) {
+        if (!isPlanOf(existing.plan, pipelineSpecification)) {
+            throw new RuntimeException("Pipeline " + pipelineSpecification.getName() + " already exist for processor " + StanfordTextProcessor.class.getName());
         }
+    }
 
-        public void setBeginPosition(int beginPosition) {
-            if (this.beginPosition < 0) {
-                this.beginPosition = beginPosition;
+    /**
+     * Builds the pipeline the creation was registered for and completes it. Failed creations are unregistered, so
+     * that the pipeline can be created again.
+     */
+    private void buildPipeline(PipelineSpecification pipelineSpecification, Creation creation) {
+        String name = pipelineSpecification.getName();
+        String language = pipelineSpecification.getLanguage();
+        statuses.put(name, PipelineStatus.LOADING);
+        try {
+            PipelineBuilder pipelineBuilder = new PipelineBuilder(name, language);
+            pipelineBuilder = createPipelineAux(pipelineSpecification, pipelineBuilder);
+            if (pipelineBuilder == null) {
+                statuses.remove(name);
+                creations.remove(name, creation);
+                creation.pipeline.complete(null);
+                return;
+            }
+            int threads = threadBudget.register(name, (int) pipelineSpecification.getThreadNumber(), getThreadShare(pipelineSpecification));
+            pipelineBuilder.threadNumber(threads);
+            StanfordCoreNLP pipeline = pipelineBuilder.build(modelRegistry);
+            if (creations.get(name) != creation) {
+                // removed while its models were loading
+                releasePipeline(pipeline);
+                throw new RuntimeException("Pipeline " + name + " was removed while it was being created");
             }
+            pipelines.put(name, pipeline);
+            if (creations.get(name) != creation) {
+                // removePipeline drops the creation before the loaded pipeline, so this sees any removal it missed
+                if (pipelines.remove(name, pipeline)) {
+                    releasePipeline(pipeline);
+                }
+                throw new RuntimeException("Pipeline " + name + " was removed while it was being created");
+            }
+            specifications.put(name, pipelineSpecification);
+            statuses.put(name, PipelineStatus.READY);
+            creation.pipeline.complete(pipeline);
+            if (eviction.isEnabled()) {
+                eviction.loaded(name);
+                scheduleIdleEviction();
+                enforceHeapBudget(name);
+            }
+        } catch (RuntimeException e) {
+            if (creations.remove(name, creation)) {
+                threadBudget.unregister(name);
+                statuses.put(name, PipelineStatus.FAILED);
+            } else if (!creations.containsKey(name)) {
+                // removed while being built, possibly before the bulkhead and the status were set
+                threadBudget.unregister(name);
+                statuses.remove(name);
+            }
+            creation.pipeline.completeExceptionally(e);
+            throw e;
         }
+    }
 
-        public void setEndPosition(int endPosition) {
-            this.endPosition = endPosition;
+    /**
+     * Unloads the models of the pipeline while keeping its specification, so that it is loaded again on next use.
+     * Pipelines in use are not evicted. The thread bulkhead of the pipeline is kept until the pipeline is removed.
+     */
+    public void evictPipeline(String name) {
+        Creation creation = creations.get(name);
+        if (creation == null || !creation.pipeline.isDone() || !creation.evict() || !creations.remove(name, creation)) {
+            return;
         }
-
-        public final void reset() {
-            sb = new StringBuilder();
-            beginPosition = -1;
-            endPosition = -1;
+        eviction.unloaded(name);
+        StanfordCoreNLP pipeline = join(creation.pipeline);
+        // only the loaded pipeline of this creation, not one loaded again meanwhile, and not if removed meanwhile
+        if (pipeline != null && pipelines.remove(name, pipeline)) {
+            releasePipeline(pipeline);
+            statuses.put(name, PipelineStatus.EVICTED);
+            LOG.info("Evicted pipeline " + name);
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (!(o instanceof PhraseHolder)) {
-                return false;
-            }
-            PhraseHolder otherObject = (PhraseHolder) o;
-            if (this.sb != null
-                    && otherObject.sb != null
-                    && this.sb.toString().equals(otherObject.sb.toString())
-                    && this.beginPosition == otherObject.beginPosition
-                    && this.endPosition == otherObject.endPosition) {
-                return true;
+    /**
+     * Unloads the least recently used pipelines until the loaded models fit in the heap budget again. The models
+     * shared with other pipelines are only freed with the last of them, so the size of the loaded models is checked
+     * again after each unload.
+     */
+    private void enforceHeapBudget(String keep) {
+        for (String victim : eviction.evictionOrder(keep)) {
+            if (!eviction.isOverBudget(modelRegistry.getTotalBytes())) {
+                return;
             }
-            return false;
+            evictPipeline(victim);
         }
+    }
 
-        @Override
-        public int compareTo(PhraseHolder o) {
-            if (o == null) {
-                return 1;
-            }
-            if (this.equals(o)) {
-                return 0;
-            } else if (this.beginPosition > o.beginPosition) {
-                return 1;
-            } else if (this.beginPosition == o.beginPosition) {
-                if (this.endPosition > o.endPosition) {
-                    return 1;
-                }
+    private void scheduleIdleEviction() {
+        if (eviction.getIdleTimeout() <= 0 || evictionScheduler != null) {
+            return;
+        }
+        synchronized (this) {
+            if (evictionScheduler == null) {
+                long period = Math.max(1000L, eviction.getIdleTimeout() / 2);
+                evictionScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("stanford-eviction"));
+                evictionScheduler.scheduleWithFixedDelay(() -> {
+                    try {
+                        eviction.idle().forEach(this::evictPipeline);
+                    } catch (RuntimeException e) {
+                        LOG.error("Could not evict idle pipelines", e);
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
             }
-            return -1;
         }
     }
 
-    @Override
-    public List<String> getPipelines() {
-        return new ArrayList<>(pipelines.keySet());
-    }
-
-    public boolean checkPipeline(String name) {
-        return pipelines.containsKey(name);
+    protected ExecutorService getLoaderExecutor() {
+        if (loaderExecutor == null) {
+            synchronized (this) {
+                if (loaderExecutor == null) {
+                    int workers = Math.max(1, Integer.getInteger(PRELOAD_WORKERS, 1));
+                    loaderExecutor = Executors.newFixedThreadPool(workers, new NamedThreadFactory("stanford-pipeline-loader"));
+                }
+            }
+        }
+        return loaderExecutor;
     }
 
-    @Override
-    public void createPipeline(PipelineSpecification pipelineSpecification) {
-        if (pipelines.containsKey(pipelineSpecification.getName())) {
-            throw new RuntimeException("Pipeline " + pipelineSpecification.getName() + " already exist for processor " + StanfordTextProcessor.class.getName());
+    protected double getThreadShare(PipelineSpecification pipelineSpecification) {
+        String share = System.getProperty(THREAD_SHARE + pipelineSpecification.getName());
+        if (share == null) {
+            return 0.0d;
         }
-
-        String name = pipelineSpecification.getName();
-        String language = pipelineSpecification.getLanguage();
-        PipelineBuilder pipelineBuilder = new PipelineBuilder(name, language);
-        pipelineBuilder = createPipelineAux(pipelineSpecification, pipelineBuilder);
-        if (pipelineBuilder != null) {
-            StanfordCoreNLP pipeline = pipelineBuilder.build();
-            pipelines.put(name, pipeline);
+        try {
+            return Double.parseDouble(share);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid " + THREAD_SHARE + pipelineSpecification.getName() + " value: " + share);
+            return 0.0d;
         }
     }
 
@@ -793,21 +1700,12 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
             pipelineBuilder.dependencies();
         }
 
-        String stopWordList = AbstractTextProcessor.DEFAULT_STOP_WORD_LIST;
-        if (pipelineSpecification.getStopWords() != null) {
-            String customStopWordList = pipelineSpecification.getStopWords();
-            if (customStopWordList.startsWith("+")) {
-                stopWordList += "," + customStopWordList.replace("+,", "").replace("+", "");
-            } else if (pipelineSpecification.getWhitelist() != null) {
-                stopWordList = "";
-            } else {
-                stopWordList = customStopWordList;
-            }
+        PipelinePlan plan = PipelinePlan.compile(pipelineSpecification);
+        pipelineBuilder.customStopWordAnnotator(plan.getStopWordList(), plan.isCheckLemma());
+        if (plan.hasWhitelist()) {
+            pipelineBuilder.whitelistAnnotator(plan.getWhitelist());
         }
 
-        boolean checkLemma = pipelineSpecification.hasProcessingStep("checkLemma", true);
-        pipelineBuilder.customStopWordAnnotator(stopWordList, checkLemma);
-
 
         if (pipelineSpecification.hasProcessingStep(STEP_SENTIMENT)) {
             pipelineBuilder.extractSentiment();
@@ -838,9 +1736,125 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     @Override
     public void removePipeline(String name) {
-        if (pipelines.containsKey(name)) {
-            pipelines.remove(name);
+        // the creation goes first, so that a build finishing meanwhile sees the removal and unloads its pipeline
+        creations.remove(name);
+        long unloadedBytes = 0;
+        StanfordCoreNLP pipeline = pipelines.remove(name);
+        if (pipeline != null) {
+            unloadedBytes = releasePipeline(pipeline);
+            LOG.info("Removed pipeline " + name + ", unloading an estimated " + unloadedBytes + " bytes of annotators");
         }
+        if (tokenLookupCache != null) {
+            tokenLookupCache.invalidate(name);
+        }
+        threadBudget.unregister(name);
+        statuses.remove(name);
+        specifications.remove(name);
+        updated.remove(name);
+        eviction.unloaded(name);
+    }
+
+    /**
+     * Replaces the stopwords and the whitelist of the pipeline without loading its models again: a new pipeline is
+     * built with the annotators of the current one, except for the stopword and whitelist annotators, and swapped
+     * in. Annotations already running finish with the previous words. An evicted pipeline is loaded with the new
+     * words on next use.
+     *
+     * @param stopWords the stopwords, in the format of {@link PipelineSpecification#getStopWords()}
+     * @param whitelist the whitelist, or null for none
+     */
+    public void updateStopWords(String name, String stopWords, String whitelist) {
+        synchronized (updated) {
+            PipelineSpecification current = specifications.get(name);
+            if (current == null) {
+                throw new RuntimeException("Pipeline: " + name + " doesn't exist");
+            }
+            PipelineSpecification specification = new PipelineSpecification(name, current.getLanguage(),
+                    current.getTextProcessor(), current.getProcessingStepsAsStrings(), stopWords,
+                    current.getThreadNumber(), current.getExcludedNER(), current.getExcludedPOS());
+            specification.setWhitelist(whitelist);
+            PipelinePlan plan = PipelinePlan.compile(specification);
+
+            Creation creation = creations.get(name);
+            StanfordCoreNLP previous = creation != null ? join(creation.pipeline) : null;
+            if (previous == null) {
+                specifications.put(name, specification);
+                updated.add(name);
+                if (annotationCache != null) {
+                    annotationCache.clear();
+                }
+                return;
+            }
+
+            PipelineBuilder pipelineBuilder = createPipelineAux(specification, new PipelineBuilder(name, specification.getLanguage()));
+            if (pipelineBuilder == null) {
+                throw new RuntimeException("Could not update the stopwords of pipeline " + name);
+            }
+            pipelineBuilder.threadNumber(Integer.parseInt(previous.getProperties().getProperty("threads", "1")));
+            StanfordCoreNLP pipeline = pipelineBuilder.build(modelRegistry);
+            Creation replacement = new Creation(plan);
+            replacement.pipeline.complete(pipeline);
+            if (!creations.replace(name, creation, replacement)) {
+                // removed or evicted meanwhile
+                releasePipeline(pipeline);
+                throw new RuntimeException("Pipeline " + name + " was removed while its stopwords were being updated");
+            }
+            updated.add(name);
+            specifications.put(name, specification);
+            pipelines.put(name, pipeline);
+            if (annotationCache != null) {
+                // results of the previous words are not looked up anymore, they would only take room
+                annotationCache.clear();
+            }
+            if (tokenLookupCache != null) {
+                tokenLookupCache.invalidate(name);
+            }
+            releasePipeline(previous);
+            LOG.info("Updated the stopwords of pipeline " + name);
+        }
+    }
+
+    /**
+     * Removes the pipeline like {@link #removePipeline(String)} and measures the heap freed, running a garbage
+     * collection before and after. Meant for checks and diagnostics, not for regular use.
+     *
+     * @return the bytes of used heap reclaimed by the removal, which can be less than the estimated size of the
+     * unloaded annotators while other pipelines still use them, or if other threads allocate meanwhile
+     */
+    public long removePipelineAndMeasure(String name) {
+        long estimated = modelRegistry.getTotalBytes();
+        System.gc();
+        long before = ModelRegistry.usedHeap();
+        removePipeline(name);
+        System.gc();
+        long reclaimed = Math.max(0L, before - ModelRegistry.usedHeap());
+        estimated -= modelRegistry.getTotalBytes();
+        LOG.info("Removing pipeline " + name + " reclaimed " + reclaimed + " bytes of heap, " + estimated + " bytes of annotators were unloaded");
+        return reclaimed;
+    }
+
+    /**
+     * Releases the annotators of the pipeline and of the pipelines derived from it for lookups and sentiment.
+     *
+     * @return the estimated heap (in bytes) of the annotators no other pipeline uses anymore
+     */
+    protected long releasePipeline(StanfordCoreNLP pipeline) {
+        long before = modelRegistry.getTotalBytes();
+        StanfordCoreNLP lookup = lookupPipelines.remove(pipeline);
+        if (lookup != null && lookup != pipeline) {
+            modelRegistry.release(lookup);
+        }
+        synchronized (this) {
+            Pair<StanfordCoreNLP, StanfordCoreNLP> sentiment = sentimentPipeline;
+            if (sentiment != null && sentiment.first() == pipeline) {
+                sentimentPipeline = null;
+                if (sentiment.second() != pipeline) {
+                    modelRegistry.release(sentiment.second());
+                }
+            }
+        }
+        modelRegistry.release(pipeline);
+        return Math.max(0L, before - modelRegistry.getTotalBytes());
     }
 
     @Override
@@ -856,6 +1870,13 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
         NERModelTool nerModel = new NERModelTool(trainFilePath, modelId, lang, propFile);
         nerModel.train(modelPath);
         storeModelLocation(modelId, modelPath);
+        if (annotationCache != null) {
+            // results computed with a previous version of the model must not be served anymore
+            annotationCache.clear();
+        }
+        if (tokenLookupCache != null) {
+            tokenLookupCache.clear();
+        }
         return "Training successful.";
     }
 
@@ -869,7 +1890,7 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
 
     protected List<String> getTokenIdsToUse(String tokenId, List<String> currTokenTokenIds) {
         if (currTokenTokenIds.isEmpty()) {
-            return Arrays.asList(tokenId);
+            return Collections.singletonList(tokenId);
         }
 
         return currTokenTokenIds;
@@ -887,6 +1908,6 @@ public class StanfordTextProcessor extends AbstractTextProcessor {
     }
 
     protected String getNERModelsForPipeline(PipelineSpecification pipelineSpecification) {
-        return pipelines.get(pipelineSpecification.getName()).getProperties().getProperty("ner.model", "");
+        return getPipeline(pipelineSpecification.getName()).getProperties().getProperty("ner.model", "");
     }
 }
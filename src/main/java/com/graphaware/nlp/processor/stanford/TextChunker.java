@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a long text into chunks of bounded length that can be annotated independently. Chunks end, in order of
+ * preference, at a paragraph break, at the end of a sentence or at a whitespace, and fall back to a hard cut only
+ * when the window contains none of them. Concatenating the chunks gives back the original text.
+ */
+public class TextChunker {
+
+    private final int maxChunkLength;
+
+    public TextChunker(int maxChunkLength) {
+        if (maxChunkLength < 2) {
+            throw new IllegalArgumentException("The chunk length must be at least 2, got " + maxChunkLength);
+        }
+        this.maxChunkLength = maxChunkLength;
+    }
+
+    /**
+     * @return the offset at which each chunk starts; the first one is always 0
+     */
+    public List<Integer> split(String text) {
+        List<Integer> starts = new ArrayList<>();
+        int begin = 0;
+        int length = text.length();
+        do {
+            starts.add(begin);
+            begin = length - begin > maxChunkLength ? findBreak(text, begin, begin + maxChunkLength) : length;
+        } while (begin < length);
+        return starts;
+    }
+
+    private int findBreak(String text, int begin, int end) {
+        // never produce chunks shorter than half the window, they would fragment the text for no benefit
+        int min = begin + maxChunkLength / 2;
+        int sentenceEnd = -1;
+        int whitespace = -1;
+        for (int i = end - 1; i > min; i--) {
+            char c = text.charAt(i);
+            if (c == '\n' && isParagraphBreak(text, i, min)) {
+                return i + 1;
+            }
+            if (Character.isWhitespace(c)) {
+                if (whitespace < 0) {
+                    whitespace = i + 1;
+                }
+                char previous = text.charAt(i - 1);
+                if (sentenceEnd < 0 && (previous == '.' || previous == '!' || previous == '?')) {
+                    sentenceEnd = i + 1;
+                }
+            }
+        }
+        if (sentenceEnd > 0) {
+            return sentenceEnd;
+        }
+        return whitespace > 0 ? whitespace : end;
+    }
+
+    private static boolean isParagraphBreak(String text, int newline, int min) {
+        for (int i = newline - 1; i >= min; i--) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return true;
+            }
+            if (c != '\r' && c != ' ' && c != '\t') {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.annotators;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of char sequences used for stopword lookups. Terms are kept as char arrays and compared
+ * char by char, so tokens can be looked up as {@link CharSequence} or as a slice of a char array without building a
+ * new String.
+ *
+ * A case insensitive set stores its terms lower cased and folds the case of every looked up char. Any set can also be
+ * queried with {@link #containsLowerCase(CharSequence)}, which matches as if the text had been lower cased first.
+ *
+ * Sets built from Lucene's CharArraySet, as the stopwords used to be, can be imported once with
+ * {@link #copyOf(Iterable, boolean)}; Lucene is not needed at lookup time.
+ */
+public final class CharSequenceSet {
+
+    /**
+     * The English stopwords of Lucene's StopAnalyzer.ENGLISH_STOP_WORDS_SET
+     */
+    private static final String[] ENGLISH_STOP_WORDS = {
+        "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it", "no", "not",
+        "of", "on", "or", "such", "that", "the", "their", "then", "there", "these", "they", "this", "to", "was",
+        "will", "with"
+    };
+
+    private final boolean ignoreCase;
+    private final boolean readOnly;
+    private char[][] keys;
+    private int size;
+
+    public CharSequenceSet(int expectedSize, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.readOnly = false;
+        this.keys = new char[capacityFor(expectedSize)][];
+    }
+
+    private CharSequenceSet(CharSequenceSet source) {
+        this.ignoreCase = source.ignoreCase;
+        this.readOnly = true;
+        this.keys = source.keys;
+        this.size = source.size;
+    }
+
+    /**
+     * @return a new read only set of the English stopwords
+     */
+    public static CharSequenceSet englishStopWords() {
+        CharSequenceSet set = new CharSequenceSet(ENGLISH_STOP_WORDS.length, false);
+        for (String term : ENGLISH_STOP_WORDS) {
+            set.add(term);
+        }
+        return unmodifiableSet(set);
+    }
+
+    /**
+     * Copies the terms of a collection of char sequences or char arrays, such as a Lucene CharArraySet.
+     */
+    public static CharSequenceSet copyOf(Iterable<?> terms, boolean ignoreCase) {
+        CharSequenceSet set = new CharSequenceSet(16, ignoreCase);
+        for (Object term : terms) {
+            if (term instanceof char[]) {
+                set.add(new String((char[]) term));
+            } else if (term instanceof CharSequence) {
+                set.add((CharSequence) term);
+            } else {
+                throw new IllegalArgumentException("Unsupported stopword " + term);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return a read only view of the set, sharing its terms
+     */
+    public static CharSequenceSet unmodifiableSet(CharSequenceSet set) {
+        return set.readOnly ? set : new CharSequenceSet(set);
+    }
+
+    /**
+     * @return true if the term was not in the set yet
+     */
+    public boolean add(CharSequence term) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The stopword set is read only");
+        }
+        int length = term.length();
+        char[] key = new char[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = ignoreCase ? Character.toLowerCase(term.charAt(i)) : term.charAt(i);
+        }
+        int slot = slot(keys, key);
+        if (keys[slot] != null) {
+            return false;
+        }
+        keys[slot] = key;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(CharSequence text) {
+        return lookup(text, ignoreCase);
+    }
+
+    /**
+     * Same as {@code contains(text.toString().toLowerCase())}, with the case folded char by char while probing.
+     */
+    public boolean containsLowerCase(CharSequence text) {
+        return lookup(text, true);
+    }
+
+    public boolean contains(char[] text, int offset, int length) {
+        return lookup(new CharArraySequence(text, offset, length), ignoreCase);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    private boolean lookup(CharSequence text, boolean fold) {
+        int length = text.length();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + charAt(text, i, fold);
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            char[] key = keys[slot];
+            if (key == null) {
+                return false;
+            }
+            if (key.length == length && matches(key, text, fold)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean matches(char[] key, CharSequence text, boolean fold) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != charAt(text, i, fold)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char charAt(CharSequence text, int index, boolean fold) {
+        char c = text.charAt(index);
+        return fold ? Character.toLowerCase(c) : c;
+    }
+
+    private static int slot(char[][] table, char[] key) {
+        int mask = table.length - 1;
+        int slot = mix(hash(key)) & mask;
+        while (table[slot] != null && !Arrays.equals(table[slot], key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        char[][] table = new char[capacity][];
+        for (char[] key : keys) {
+            if (key != null) {
+                table[slot(table, key)] = key;
+            }
+        }
+        keys = table;
+    }
+
+    private static int hash(char[] key) {
+        int hash = 0;
+        for (char c : key) {
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static final class CharArraySequence implements CharSequence {
+
+        private final char[] text;
+        private final int offset;
+        private final int length;
+
+        private CharArraySequence(char[] text, int offset, int length) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new CharArraySequence(text, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(text, offset, length);
+        }
+    }
+}
@@ -54,8 +54,17 @@ public class StopwordAnnotator implements Annotator, CoreAnnotation<Pair<Boolean
 
     private static final Class<? extends Pair> boolPair = Pair.makePair(true, true).getClass();
 
+    /**
+     * The four possible marks, shared by all tokens so that annotating allocates nothing per token. They must not be
+     * modified.
+     */
+    private static final Pair<Boolean, Boolean> NOT_STOPWORD = Pair.makePair(false, false);
+    private static final Pair<Boolean, Boolean> WORD_STOPWORD = Pair.makePair(true, false);
+    private static final Pair<Boolean, Boolean> LEMMA_STOPWORD = Pair.makePair(false, true);
+    private static final Pair<Boolean, Boolean> WORD_AND_LEMMA_STOPWORD = Pair.makePair(true, true);
+
     private final Properties props;
-    private CharArraySetWrapper stopwords;
+    private CharSequenceSet stopwords;
     private boolean checkLemma;
 
     public StopwordAnnotator(String annotatorClass, Properties props) {
@@ -73,24 +82,38 @@ public class StopwordAnnotator implements Annotator, CoreAnnotation<Pair<Boolean
             boolean ignoreCase = Boolean.parseBoolean(props.getProperty(IGNORE_STOPWORD_CASE, "false"));
             this.stopwords = getStopWordList(stopwordList, ignoreCase);
         } else {
-            this.stopwords = new CharArraySetWrapper();
+            this.stopwords = CharSequenceSet.englishStopWords();
         }
     }
 
     @Override
     public void annotate(Annotation annotation) {
         //checkStopwords();
-        if (stopwords != null && stopwords.size() > 0 && annotation.containsKey(TokensAnnotation.class)) {
+        if (stopwords != null && !stopwords.isEmpty() && annotation.containsKey(TokensAnnotation.class)) {
             List<CoreLabel> tokens = annotation.get(TokensAnnotation.class);
             for (CoreLabel token : tokens) {
-                boolean isWordStopword = stopwords.contains(token.word().toLowerCase());
-                boolean isLemmaStopword = checkLemma && token.lemma() != null ? stopwords.contains(token.lemma().toLowerCase()) : false;
-                Pair<Boolean, Boolean> pair = Pair.makePair(isWordStopword, isLemmaStopword);
-                token.set(StopwordAnnotator.class, pair);
+                boolean isWordStopword = stopwords.containsLowerCase(token.word());
+                boolean isLemmaStopword = checkLemma && token.lemma() != null ? stopwords.containsLowerCase(token.lemma()) : false;
+                token.set(StopwordAnnotator.class, mark(isWordStopword, isLemmaStopword));
             }
         }
     }
 
+    private static Pair<Boolean, Boolean> mark(boolean isWordStopword, boolean isLemmaStopword) {
+        if (isWordStopword) {
+            return isLemmaStopword ? WORD_AND_LEMMA_STOPWORD : WORD_STOPWORD;
+        }
+        return isLemmaStopword ? LEMMA_STOPWORD : NOT_STOPWORD;
+    }
+
+    /**
+     * @return true if the word or the lemma of the token was marked as a stopword
+     */
+    public static boolean isStopword(CoreLabel token) {
+        Pair<Boolean, Boolean> mark = token.get(StopwordAnnotator.class);
+        return mark != null && mark != NOT_STOPWORD && (mark.first() || mark.second());
+    }
+
     @Override
     public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
         return Collections.singleton(StopwordAnnotator.class);
@@ -124,13 +147,13 @@ public class StopwordAnnotator implements Annotator, CoreAnnotation<Pair<Boolean
         return (Class<Pair<Boolean, Boolean>>) boolPair;
     }
 
-    public CharArraySetWrapper getStopWordList(String stopwordList, boolean ignoreCase) {
+    public CharSequenceSet getStopWordList(String stopwordList, boolean ignoreCase) {
         String[] terms = stopwordList.split(",");
-        CharArraySetWrapper stopwordSet = new CharArraySetWrapper(terms.length, ignoreCase);
+        CharSequenceSet stopwordSet = new CharSequenceSet(terms.length, ignoreCase);
         for (String term : terms) {
             stopwordSet.add(term.trim());
         }
-        return CharArraySetWrapper.unmodifiableSet(stopwordSet);
+        return CharSequenceSet.unmodifiableSet(stopwordSet);
     }
 
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.annotators;
+
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArraySet;
+
+/**
+ * Marks every token with whether its text or its lemma belongs to the whitelist, ignoring case. Tokens marked as
+ * not whitelisted are not turned into tags.
+ */
+public class WhitelistAnnotator implements Annotator, CoreAnnotation<Boolean> {
+
+    /**
+     * whitelist annotator class name used in annotators property
+     */
+    public static final String ANNOTATOR_CLASS = "whitelist";
+
+    /**
+     * Property key to specify the comma delimited list of whitelisted words
+     */
+    public static final String WHITELIST = "whitelist-list";
+
+    @SuppressWarnings("rawtypes")
+    private static final Set<Class<? extends CoreAnnotation>> REQUIREMENTS_SATISFIED = Collections.singleton(WhitelistAnnotator.class);
+    @SuppressWarnings("rawtypes")
+    private static final Set<Class<? extends CoreAnnotation>> REQUIREMENTS = Collections.unmodifiableSet(new ArraySet<>(Arrays.asList(
+            CoreAnnotations.TextAnnotation.class,
+            CoreAnnotations.TokensAnnotation.class,
+            CoreAnnotations.SentencesAnnotation.class,
+            CoreAnnotations.LemmaAnnotation.class
+    )));
+
+    private final Set<String> whitelist;
+
+    public WhitelistAnnotator(String annotatorClass, Properties props) {
+        this.whitelist = compile(props.getProperty(WHITELIST, ""));
+    }
+
+    public static Set<String> compile(String whitelist) {
+        Set<String> words = new HashSet<>();
+        for (String word : whitelist.split(",")) {
+            words.add(word.trim().toLowerCase());
+        }
+        return Collections.unmodifiableSet(words);
+    }
+
+    public boolean isWhitelisted(String word) {
+        return word != null && whitelist.contains(word.toLowerCase());
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+        if (annotation.containsKey(TokensAnnotation.class)) {
+            List<CoreLabel> tokens = annotation.get(TokensAnnotation.class);
+            for (CoreLabel token : tokens) {
+                boolean whitelisted = isWhitelisted(token.originalText()) || isWhitelisted(token.lemma());
+                token.set(WhitelistAnnotator.class, whitelisted);
+            }
+        }
+    }
+
+    // the raw CoreAnnotation bound is the one of the Annotator interface, which these methods must match
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+        return REQUIREMENTS_SATISFIED;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<Class<? extends CoreAnnotation>> requires() {
+        return REQUIREMENTS;
+    }
+
+    @Override
+    public Class<Boolean> getType() {
+        return Boolean.class;
+    }
+}
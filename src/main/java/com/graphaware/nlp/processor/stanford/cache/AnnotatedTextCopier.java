@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.cache;
+
+import com.graphaware.nlp.domain.*;
+
+import java.util.*;
+
+/**
+ * Deep copies an {@link AnnotatedText}, so that a cached annotation can be handed to several callers which each set
+ * sentiments, add parents to tags and so on. References between elements (the same tag in several occurrences,
+ * coreferences, phrase references, tag parents) point to the copies. Typed dependencies are immutable and shared.
+ */
+public class AnnotatedTextCopier {
+
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+    private AnnotatedTextCopier() {
+    }
+
+    public static AnnotatedText copy(AnnotatedText annotatedText) {
+        return annotatedText != null ? new AnnotatedTextCopier().copyText(annotatedText) : null;
+    }
+
+    private AnnotatedText copyText(AnnotatedText annotatedText) {
+        AnnotatedText copy = new AnnotatedText();
+        copy.setText(annotatedText.getText());
+        for (Sentence sentence : annotatedText.getSentences()) {
+            copy.addSentence(copySentence(sentence));
+        }
+        // coreferences may point to a later sentence, so they are resolved once all sentences are copied
+        for (Sentence sentence : annotatedText.getSentences()) {
+            for (List<TagOccurrence> occurrences : sentence.getTagOccurrences().values()) {
+                for (TagOccurrence occurrence : occurrences) {
+                    OptimizedCoreference coreference = occurrence.getCoreference();
+                    if (coreference != null) {
+                        copyOf(occurrence).setCoreference(new OptimizedCoreference(
+                                copyOrSame(coreference.getSentence()), copyOrSame(coreference.getTagOccurrence())));
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
+    private Sentence copySentence(Sentence sentence) {
+        Sentence copy = new Sentence(sentence.getSentence(), sentence.getSentenceNumber());
+        copies.put(sentence, copy);
+        copy.setSentiment(sentence.getSentiment());
+        sentence.getTags().forEach((key, tag) -> copy.getTags().put(key, copyTag(tag)));
+        sentence.getTagOccurrences().forEach((begin, occurrences) -> {
+            List<TagOccurrence> copied = new ArrayList<>(occurrences.size());
+            for (TagOccurrence occurrence : occurrences) {
+                copied.add(copyTagOccurrence(occurrence));
+            }
+            copy.getTagOccurrences().put(begin, copied);
+        });
+        sentence.getPhraseOccurrences().forEach((begin, phrases) -> {
+            Map<Integer, PartOfTextOccurrence<Phrase>> copied = new HashMap<>();
+            phrases.forEach((end, occurrence) -> copied.put(end, new PartOfTextOccurrence<>(copyPhrase(occurrence.getElement()),
+                    occurrence.getSpan().first(), occurrence.getSpan().second(), copyIds(occurrence.getPartIds()))));
+            copy.getPhraseOccurrences().put(begin, copied);
+        });
+        copy.getTypedDependencies().addAll(sentence.getTypedDependencies());
+        return copy;
+    }
+
+    private TagOccurrence copyTagOccurrence(TagOccurrence occurrence) {
+        TagOccurrence copy = new TagOccurrence(copyTag(occurrence.getElement()), occurrence.getSpan().first(),
+                occurrence.getSpan().second(), occurrence.getValue(), copyIds(occurrence.getPartIds()));
+        copies.put(occurrence, copy);
+        copy.setConfidence(occurrence.getConfidence());
+        return copy;
+    }
+
+    private Tag copyTag(Tag tag) {
+        if (tag == null) {
+            return null;
+        }
+        Tag copy = copyOf(tag);
+        if (copy != null) {
+            return copy;
+        }
+        copy = new Tag(tag.getLemma(), tag.getLanguage(), tag.getOriginalValue());
+        copies.put(tag, copy);
+        copy.setMultiplicity(tag.getMultiplicity());
+        copy.setPos(tag.getPos());
+        copy.setNe(tag.getNe());
+        if (tag.getExtraProperties() != null) {
+            tag.getExtraProperties().forEach(copy::addProperties);
+        }
+        if (tag.getParents() != null) {
+            for (TagParentRelation parent : tag.getParents()) {
+                copy.addParent(new TagParentRelation(copyTag(parent.getParent()), parent.getRelation(), parent.getWeight(), parent.getSource()));
+            }
+        }
+        return copy;
+    }
+
+    private Phrase copyPhrase(Phrase phrase) {
+        if (phrase == null) {
+            return null;
+        }
+        Phrase copy = copyOf(phrase);
+        if (copy != null) {
+            return copy;
+        }
+        copy = new Phrase(phrase.getContent(), phrase.getType());
+        copies.put(phrase, copy);
+        copy.setReference(copyPhrase(phrase.getReference()));
+        return copy;
+    }
+
+    private static List<String> copyIds(List<String> ids) {
+        return ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copyOf(T original) {
+        return (T) copies.get(original);
+    }
+
+    /**
+     * @return the copy of the element, or the element itself if it is not part of the copied text
+     */
+    private <T> T copyOrSame(T original) {
+        T copy = copyOf(original);
+        return copy != null ? copy : original;
+    }
+}
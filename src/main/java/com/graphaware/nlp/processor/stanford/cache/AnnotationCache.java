@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.cache;
+
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Content addressed cache of annotation results. Entries are keyed by a hash of the text, of the pipeline name and of
+ * the parts of the pipeline specification that affect the annotation (language, processing steps and models,
+ * stopwords, whitelist, excluded NER and POS), so that the cache survives a pipeline being removed and created again
+ * with the same settings. Entries are evicted in LRU order once their estimated size exceeds the configured number
+ * of bytes. Concurrent requests for the same key share a single computation.
+ *
+ * The cached {@link AnnotatedText} instances never leave the cache: every caller gets its own deep copy, which it is
+ * free to modify.
+ */
+public class AnnotationCache {
+
+    private static final int SENTENCE_OVERHEAD = 256;
+    private static final int TAG_OVERHEAD = 192;
+    private static final int OCCURRENCE_OVERHEAD = 96;
+    private static final int DEPENDENCY_OVERHEAD = 64;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<AnnotatedText>> inFlight = new ConcurrentHashMap<>();
+    private long currentBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public AnnotationCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive, got " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a copy of the cached annotation for the text, computing it with <code>annotator</code> on a miss. If
+     * the same text is already being annotated by the same pipeline with equivalent settings the caller waits for
+     * that result instead. Failures are propagated to every waiting caller and are not cached.
+     *
+     * @param pipelineSpecification the settings the pipeline annotates with, which after a stopword update are not
+     *                              the ones of the specification held by the caller
+     */
+    public AnnotatedText get(String text, PipelineSpecification pipelineSpecification, Supplier<AnnotatedText> annotator) {
+        String key = key(text, pipelineSpecification);
+        AnnotatedText cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return AnnotatedTextCopier.copy(cached);
+        }
+
+        CompletableFuture<AnnotatedText> future = new CompletableFuture<>();
+        CompletableFuture<AnnotatedText> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return AnnotatedTextCopier.copy(await(running));
+        }
+
+        try {
+            // another caller may have stored the result between the lookup and the registration above
+            AnnotatedText result = lookup(key);
+            if (result == null) {
+                misses.incrementAndGet();
+                result = annotator.get();
+                store(key, result, estimateSize(text, result));
+            } else {
+                hits.incrementAndGet();
+            }
+            future.complete(result);
+            return AnnotatedTextCopier.copy(result);
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private synchronized AnnotatedText lookup(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    private synchronized void store(String key, AnnotatedText value, long size) {
+        if (value == null || size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(value, size));
+        if (previous != null) {
+            currentBytes -= previous.size;
+        }
+        currentBytes += size;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private static AnnotatedText await(CompletableFuture<AnnotatedText> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    public static String key(String text, PipelineSpecification pipelineSpecification) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(pipelineSpecification.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(fingerprint(pipelineSpecification).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return a canonical representation of the settings of the specification that affect the annotation
+     */
+    public static String fingerprint(PipelineSpecification pipelineSpecification) {
+        Map<String, String> steps = new TreeMap<>();
+        if (pipelineSpecification.getProcessingStepsAsStrings() != null) {
+            pipelineSpecification.getProcessingStepsAsStrings().forEach((step, value) -> steps.put(step, String.valueOf(value)));
+        }
+        return pipelineSpecification.getLanguage()
+                + "|" + steps
+                + "|" + pipelineSpecification.getStopWords()
+                + "|" + pipelineSpecification.getWhitelist()
+                + "|" + sorted(pipelineSpecification.getExcludedNER())
+                + "|" + sorted(pipelineSpecification.getExcludedPOS());
+    }
+
+    private static List<String> sorted(List<String> values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Rough estimate of the heap retained by an annotation, used to weigh the cache entries.
+     */
+    public static long estimateSize(String text, AnnotatedText annotatedText) {
+        long size = 2L * text.length();
+        if (annotatedText == null || annotatedText.getSentences() == null) {
+            return size;
+        }
+        for (Sentence sentence : annotatedText.getSentences()) {
+            size += SENTENCE_OVERHEAD + 2L * (sentence.getSentence() != null ? sentence.getSentence().length() : 0);
+            size += (long) TAG_OVERHEAD * sentence.getTags().size();
+            for (List<?> occurrences : sentence.getTagOccurrences().values()) {
+                size += (long) OCCURRENCE_OVERHEAD * occurrences.size();
+            }
+            for (Map<Integer, ?> phrases : sentence.getPhraseOccurrences().values()) {
+                size += (long) OCCURRENCE_OVERHEAD * phrases.size();
+            }
+            if (sentence.getTypedDependencies() != null) {
+                size += (long) DEPENDENCY_OVERHEAD * sentence.getTypedDependencies().size();
+            }
+        }
+        return size;
+    }
+
+    private static class Entry {
+        private final AnnotatedText value;
+        private final long size;
+
+        private Entry(AnnotatedText value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.cache;
+
+import edu.stanford.nlp.ling.CoreLabel;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the tokens produced by a pipeline for the single words and short phrases looked up when
+ * annotating tags. Entries are keyed by pipeline name and text, so that the tags can be built again for any language
+ * without running the pipeline, and are dropped with {@link #invalidate(String)} when the pipeline goes away.
+ *
+ * The cached tokens are shared between callers and must be treated as read only.
+ */
+public class TokenLookupCache {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, List<CoreLabel>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TokenLookupCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the cached tokens of the text for the pipeline, or null on a miss
+     */
+    public synchronized List<CoreLabel> get(String pipeline, String text) {
+        List<CoreLabel> tokens = entries.get(new Key(pipeline, text));
+        if (tokens != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return tokens;
+    }
+
+    public synchronized void put(String pipeline, String text, List<CoreLabel> tokens) {
+        entries.put(new Key(pipeline, text), Collections.unmodifiableList(tokens));
+        if (entries.size() > maxEntries) {
+            Iterator<Key> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void invalidate(String pipeline) {
+        entries.keySet().removeIf((key) -> key.pipeline.equals(pipeline));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Key {
+
+        private final String pipeline;
+        private final String text;
+        private final int hash;
+
+        Key(String pipeline, String text) {
+            this.pipeline = pipeline;
+            this.text = text;
+            this.hash = 31 * pipeline.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && pipeline.equals(other.pipeline) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
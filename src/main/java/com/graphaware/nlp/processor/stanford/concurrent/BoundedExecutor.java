@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.concurrent;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * A fixed size executor whose backlog is bounded. Every submitted task holds a slot from the time it is accepted
+ * until it completes; when all slots are taken, {@link #submit(Supplier, long, TimeUnit)} waits for at most the
+ * given timeout and then rejects the task, pushing back on the caller instead of queueing work without limit.
+ */
+public class BoundedExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int capacity;
+
+    public BoundedExecutor(String name, int workers, int queueSize) {
+        if (workers < 1 || queueSize < 0) {
+            throw new IllegalArgumentException("Invalid executor size, workers: " + workers + ", queue size: " + queueSize);
+        }
+        this.capacity = workers + queueSize;
+        this.slots = new Semaphore(capacity);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+    }
+
+    /**
+     * Submits a task for execution.
+     *
+     * @param task    the task to run
+     * @param timeout how long to wait for a free slot, 0 to fail immediately when the executor is saturated
+     * @param unit    the unit of <code>timeout</code>
+     * @return a future completed with the result of the task
+     * @throws RejectedExecutionException when no slot became available in time or the executor is shut down
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task, long timeout, TimeUnit unit) {
+        acquireSlot(timeout, unit);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+        return future;
+    }
+
+    private void acquireSlot(long timeout, TimeUnit unit) {
+        boolean acquired;
+        try {
+            acquired = timeout > 0 ? slots.tryAcquire(timeout, unit) : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free slot", e);
+        }
+        if (!acquired) {
+            throw new RejectedExecutionException("Executor saturated: " + capacity + " tasks already running or queued");
+        }
+    }
+
+    /**
+     * @return the number of tasks currently running or waiting to run
+     */
+    public int getPendingTasks() {
+        return capacity - slots.availablePermits();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of threads all pipelines of a processor may keep busy at the same time. The budget is split into
+ * one bulkhead per pipeline: a pipeline never runs more threads than its own bulkhead allows, and all pipelines
+ * together never run more threads than the global budget. A slow pipeline therefore saturates its own bulkhead
+ * only, leaving the rest of the budget to the other pipelines.
+ */
+public class ThreadBudget {
+
+    private final int totalThreads;
+    private final Semaphore global;
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+
+    public ThreadBudget(int totalThreads) {
+        if (totalThreads < 1) {
+            throw new IllegalArgumentException("The thread budget must be positive, got " + totalThreads);
+        }
+        this.totalThreads = totalThreads;
+        this.global = new Semaphore(totalThreads, true);
+    }
+
+    /**
+     * Creates (or replaces) the bulkhead of a pipeline.
+     *
+     * @param name    the pipeline name
+     * @param threads the number of threads requested by the pipeline
+     * @param share   the fraction of the global budget reserved to the pipeline, or a non positive value to size the
+     *                bulkhead from <code>threads</code> only
+     * @return the number of threads the pipeline is allowed to use
+     */
+    public int register(String name, int threads, double share) {
+        int limit = share > 0 ? (int) Math.floor(totalThreads * Math.min(share, 1.0d)) : threads;
+        limit = Math.max(1, Math.min(limit, totalThreads));
+        bulkheads.put(name, new Semaphore(limit, true));
+        limits.put(name, limit);
+        return limit;
+    }
+
+    public void unregister(String name) {
+        bulkheads.remove(name);
+        limits.remove(name);
+    }
+
+    public boolean isRegistered(String name) {
+        return bulkheads.containsKey(name);
+    }
+
+    public int getLimit(String name) {
+        return limits.getOrDefault(name, 1);
+    }
+
+    public int getTotalThreads() {
+        return totalThreads;
+    }
+
+    /**
+     * @return the number of threads currently in use across all pipelines
+     */
+    public int getUsedThreads() {
+        return totalThreads - global.availablePermits();
+    }
+
+    /**
+     * Runs the task once <code>threads</code> threads are available both in the pipeline bulkhead and in the global
+     * budget. Requests for more threads than the bulkhead holds are reduced to the bulkhead size. A pipeline without
+     * bulkhead, for instance one removed while its annotations are still running, runs on the global budget only.
+     */
+    public <T> T run(String name, int threads, Supplier<T> task) {
+        Semaphore bulkhead = bulkheads.get(name);
+        if (bulkhead == null) {
+            return runGlobally(Math.max(1, Math.min(threads, totalThreads)), task);
+        }
+        int permits = Math.max(1, Math.min(threads, getLimit(name)));
+        acquire(bulkhead, permits);
+        try {
+            return runGlobally(permits, task);
+        } finally {
+            bulkhead.release(permits);
+        }
+    }
+
+    private <T> T runGlobally(int permits, Supplier<T> task) {
+        acquire(global, permits);
+        try {
+            return task.get();
+        } finally {
+            global.release(permits);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for annotation threads", e);
+        }
+    }
+}
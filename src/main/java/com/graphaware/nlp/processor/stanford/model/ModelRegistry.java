@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.stanford.model;
+
+import com.graphaware.nlp.processor.stanford.annotators.StopwordAnnotator;
+import com.graphaware.nlp.processor.stanford.annotators.WhitelistAnnotator;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.AnnotatorImplementations;
+import edu.stanford.nlp.pipeline.AnnotatorPool;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP.AnnotatorSignature;
+import edu.stanford.nlp.util.Lazy;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Processor wide registry of loaded annotators, shared by every pipeline whose properties give the same annotator
+ * signature (the annotator name and the properties it reads, model paths included). Each annotator is loaded once
+ * and counts the pipelines using it, so that it is unloaded when the last of them is released.
+ *
+ * CoreNLP keeps its own annotators behind soft references only, so a model not currently in use can be collected
+ * and loaded again by the next pipeline; the registry holds them strongly for as long as a pipeline needs them. When
+ * the last pipeline using an annotator is released, its entry in CoreNLP's global annotator cache is removed as well,
+ * so that the model is not kept until the heap runs out of space for soft references.
+ *
+ * The heap held by an annotator loading a model is estimated from the size of its model files, the ones named by its
+ * properties or else CoreNLP's default ones, so that the figure doesn't depend on garbage collections or on other
+ * models loading at the same time. Compressed models take more heap than their files, so the estimate is a lower
+ * bound. The other annotators hold little and are measured as the growth of the used heap while loading, garbage
+ * included, as are model annotators whose files can't be found.
+ */
+public class ModelRegistry {
+
+    private static final String CUSTOM_ANNOTATOR_PREFIX = "customAnnotatorClass.";
+    private static final List<String> CUSTOM_ANNOTATOR_PROPERTIES = Arrays.asList(
+            StopwordAnnotator.STOPWORDS_LIST,
+            StopwordAnnotator.IGNORE_STOPWORD_CASE,
+            StopwordAnnotator.CHECK_LEMMA,
+            WhitelistAnnotator.WHITELIST);
+
+    /**
+     * Annotators loading a model, estimated from the size of their model files
+     */
+    private static final Set<String> MODEL_ANNOTATORS = new HashSet<>(Arrays.asList(
+            "pos", "ner", "regexner", "parse", "depparse", "sentiment", "truecase", "coref", "dcoref", "mention",
+            "relation", "natlog", "openie", "kbp", "entitylink"));
+
+    /**
+     * Models CoreNLP loads when the properties of the annotator don't name any
+     */
+    private static final Map<String, List<String>> DEFAULT_MODELS = new HashMap<>();
+
+    static {
+        DEFAULT_MODELS.put("pos", Collections.singletonList(DefaultPaths.DEFAULT_POS_MODEL));
+        DEFAULT_MODELS.put("ner", Arrays.asList(DefaultPaths.DEFAULT_NER_THREECLASS_MODEL,
+                DefaultPaths.DEFAULT_NER_CONLL_MODEL, DefaultPaths.DEFAULT_NER_MUC_MODEL));
+        DEFAULT_MODELS.put("regexner", Collections.singletonList(DefaultPaths.DEFAULT_REGEXNER_RULES));
+        DEFAULT_MODELS.put("parse", Collections.singletonList(DefaultPaths.DEFAULT_PARSER_MODEL));
+        DEFAULT_MODELS.put("depparse", Collections.singletonList(DefaultPaths.DEFAULT_DEPENDENCY_PARSER_MODEL));
+        DEFAULT_MODELS.put("sentiment", Collections.singletonList("edu/stanford/nlp/models/sentiment/sentiment.ser.gz"));
+        DEFAULT_MODELS.put("truecase", Arrays.asList(DefaultPaths.DEFAULT_TRUECASE_MODEL,
+                DefaultPaths.DEFAULT_TRUECASE_DISAMBIGUATION_LIST));
+    }
+
+    private final Map<AnnotatorSignature, Entry> annotators = new HashMap<>();
+    private final Map<StanfordCoreNLP, Registration> pipelines = new IdentityHashMap<>();
+
+    /**
+     * Builds a pipeline for the given properties, reusing the annotators already loaded for other pipelines and
+     * loading the missing ones. The pipeline holds a reference on each of its annotators until it is released.
+     */
+    public StanfordCoreNLP load(Properties properties) {
+        String annotatorList = properties.getProperty("annotators");
+        if (annotatorList == null || annotatorList.trim().isEmpty()) {
+            return new StanfordCoreNLP(properties);
+        }
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(annotatorList.trim().split("[, \t]+"))));
+        List<AnnotatorSignature> signatures = new ArrayList<>(names.size());
+        List<Entry> entries = new ArrayList<>(names.size());
+        synchronized (this) {
+            for (String name : names) {
+                AnnotatorSignature signature = signature(name, properties);
+                Entry entry = annotators.computeIfAbsent(signature, (key) -> new Entry(coreSignature(name, properties)));
+                entry.references++;
+                signatures.add(signature);
+                entries.add(entry);
+            }
+        }
+
+        try {
+            AnnotatorPool pool = new AnnotatorPool();
+            Lazy<AnnotatorPool> defaults = Lazy.of(() -> StanfordCoreNLP.getDefaultAnnotatorPool(properties, new AnnotatorImplementations()));
+            long loadedBytes = 0;
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                Entry entry = entries.get(i);
+                LongSupplier modelBytes = MODEL_ANNOTATORS.contains(name) ? () -> modelBytes(name, properties) : () -> -1L;
+                if (entry.load(() -> defaults.get().get(name), modelBytes)) {
+                    loadedBytes += entry.bytes;
+                }
+                pool.register(name, properties, Lazy.from(entry.annotator));
+            }
+            StanfordCoreNLP pipeline = new StanfordCoreNLP(properties, PropertiesUtils.getBool(properties, "enforceRequirements", true), pool);
+            synchronized (this) {
+                pipelines.put(pipeline, new Registration(signatures, loadedBytes));
+            }
+            return pipeline;
+        } catch (RuntimeException e) {
+            release(signatures);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the references the pipeline holds on its annotators.
+     *
+     * @return the signatures of the annotators no other pipeline uses anymore, which the registry unloaded
+     */
+    public List<AnnotatorSignature> release(StanfordCoreNLP pipeline) {
+        Registration registration;
+        synchronized (this) {
+            registration = pipelines.remove(pipeline);
+        }
+        return registration != null ? release(registration.signatures) : Collections.emptyList();
+    }
+
+    private synchronized List<AnnotatorSignature> release(List<AnnotatorSignature> signatures) {
+        List<AnnotatorSignature> unloaded = new ArrayList<>();
+        List<Entry> released = new ArrayList<>();
+        for (AnnotatorSignature signature : signatures) {
+            Entry entry = annotators.get(signature);
+            if (entry != null && --entry.references <= 0) {
+                annotators.remove(signature);
+                unloaded.add(signature);
+                released.add(entry);
+            }
+        }
+        for (Entry entry : released) {
+            if (!isCoreSignatureInUse(entry.coreSignature)) {
+                StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.remove(entry.coreSignature);
+            }
+        }
+        return unloaded;
+    }
+
+    /**
+     * Custom annotators with different settings can share the CoreNLP signature, which only holds their name.
+     */
+    private boolean isCoreSignatureInUse(AnnotatorSignature coreSignature) {
+        for (Entry entry : annotators.values()) {
+            if (entry.coreSignature.equals(coreSignature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of pipelines using the annotator with the given name and properties
+     */
+    public synchronized int getReferenceCount(String name, Properties properties) {
+        Entry entry = annotators.get(signature(name, properties));
+        return entry != null ? entry.references : 0;
+    }
+
+    /**
+     * @return the estimated heap held by each annotator of the pipeline, by annotator name in pipeline order. Shared
+     * annotators are reported for every pipeline using them.
+     */
+    public synchronized Map<String, Long> getFootprint(StanfordCoreNLP pipeline) {
+        Map<String, Long> footprint = new LinkedHashMap<>();
+        Registration registration = pipelines.get(pipeline);
+        if (registration != null) {
+            for (AnnotatorSignature signature : registration.signatures) {
+                Entry entry = annotators.get(signature);
+                footprint.put(signature.name, entry != null ? entry.bytes : 0L);
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * @return the estimated heap of the annotators loaded when the pipeline was built, leaving out the ones it
+     * shares with pipelines built before
+     */
+    public synchronized long getLoadedBytes(StanfordCoreNLP pipeline) {
+        Registration registration = pipelines.get(pipeline);
+        return registration != null ? registration.loadedBytes : 0L;
+    }
+
+    /**
+     * @return the estimated heap held by all the loaded annotators, each counted once
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Entry entry : annotators.values()) {
+            total += entry.bytes;
+        }
+        return total;
+    }
+
+    public synchronized Set<AnnotatorSignature> getLoaded() {
+        return new HashSet<>(annotators.keySet());
+    }
+
+    public synchronized int size() {
+        return annotators.size();
+    }
+
+    /**
+     * Same signature CoreNLP uses for its annotator cache. Custom annotators are identified by their class and by
+     * the properties the annotators of this project read, since they don't use their name as property prefix.
+     */
+    public static AnnotatorSignature signature(String name, Properties properties) {
+        String signature = PropertiesUtils.getSignature(name, properties);
+        String customClass = properties.getProperty(CUSTOM_ANNOTATOR_PREFIX + name);
+        if (customClass != null) {
+            StringBuilder custom = new StringBuilder(signature).append(customClass).append(';');
+            for (String property : CUSTOM_ANNOTATOR_PROPERTIES) {
+                String value = properties.getProperty(property);
+                if (value != null) {
+                    custom.append(property).append(':').append(value).append(';');
+                }
+            }
+            signature = custom.toString();
+        }
+        return new AnnotatorSignature(name, signature);
+    }
+
+    /**
+     * @return the key of the annotator in CoreNLP's global annotator cache
+     */
+    public static AnnotatorSignature coreSignature(String name, Properties properties) {
+        return new AnnotatorSignature(name, PropertiesUtils.getSignature(name, properties));
+    }
+
+    private static final class Entry {
+
+        private final AnnotatorSignature coreSignature;
+        private int references;
+        private volatile Annotator annotator;
+        private volatile long bytes;
+
+        private Entry(AnnotatorSignature coreSignature) {
+            this.coreSignature = coreSignature;
+        }
+
+        /**
+         * Loads the annotator on first use. Pipelines sharing an annotator wait for the one loading it, while
+         * annotators with other signatures keep loading in parallel.
+         *
+         * @param modelBytes the size of the model files of the annotator, negative to measure the heap instead
+         * @return whether this call loaded the annotator
+         */
+        private boolean load(Supplier<Annotator> loader, LongSupplier modelBytes) {
+            if (annotator == null) {
+                synchronized (this) {
+                    if (annotator == null) {
+                        long before = usedHeap();
+                        annotator = loader.get();
+                        long estimate = modelBytes.getAsLong();
+                        bytes = estimate >= 0 ? estimate : Math.max(0L, usedHeap() - before);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Registration {
+
+        private final List<AnnotatorSignature> signatures;
+        private final long loadedBytes;
+
+        private Registration(List<AnnotatorSignature> signatures, long loadedBytes) {
+            this.signatures = signatures;
+            this.loadedBytes = loadedBytes;
+        }
+    }
+
+    /**
+     * @return the total size of the model files named by the properties of the annotator, or of CoreNLP's default
+     * models if none is named, -1 if none can be found
+     */
+    static long modelBytes(String name, Properties properties) {
+        long total = 0;
+        boolean found = false;
+        String prefix = name + ".";
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                for (String path : properties.getProperty(key).trim().split("[,;\\s]+")) {
+                    long size = resourceSize(path);
+                    if (size >= 0) {
+                        total += size;
+                        found = true;
+                    }
+                }
+            }
+        }
+        if (!found) {
+            for (String path : DEFAULT_MODELS.getOrDefault(name, Collections.emptyList())) {
+                long size = resourceSize(path);
+                if (size >= 0) {
+                    total += size;
+                    found = true;
+                }
+            }
+        }
+        return found ? total : -1L;
+    }
+
+    /**
+     * @return the size of the file or classpath resource at the given path, -1 if there is none
+     */
+    private static long resourceSize(String path) {
+        if (path.isEmpty()) {
+            return -1L;
+        }
+        File file = new File(path);
+        if (file.isFile()) {
+            return file.length();
+        }
+        URL resource = ModelRegistry.class.getClassLoader().getResource(path);
+        if (resource == null) {
+            return -1L;
+        }
+        try {
+            if ("file".equals(resource.getProtocol())) {
+                return new File(resource.toURI()).length();
+            }
+            URLConnection connection = resource.openConnection();
+            if (connection instanceof JarURLConnection) {
+                return ((JarURLConnection) connection).getJarEntry().getSize();
+            }
+            return -1L;
+        } catch (IOException | URISyntaxException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * @return the heap currently used, garbage included
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -18,10 +18,13 @@ package com.graphaware.nlp.processor;
 import com.graphaware.nlp.domain.*;
 
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.stanford.PipelineStatus;
 import com.graphaware.nlp.processor.stanford.StanfordTextProcessor;
 import com.graphaware.nlp.util.TestAnnotatedText;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -107,6 +110,332 @@ public class TextProcessorTest {
         assertEquals(annotateTag.getLemma(), "winner");
     }
 
+    @Test
+    public void testRepeatedTagLookupsReturnEqualTags() {
+        Tag first = textProcessor.annotateTag("Switzerland", PIPELINE_DEFAULT);
+        Tag second = textProcessor.annotateTag("Switzerland", PIPELINE_DEFAULT);
+        assertNotSame(first, second);
+        assertEquals(first.getLemma(), second.getLemma());
+        assertEquals(first.getNe(), second.getNe());
+        assertEquals(first.getPos(), second.getPos());
+        assertEquals(Collections.singletonList("LOCATION"), second.getNe());
+    }
+
+    @Test
+    public void testBatchTagLookupMatchesSingleLookups() {
+        List<String> texts = Arrays.asList("winners", "John went home", "winners", "Pakistani elections");
+        Map<String, List<Tag>> tags = ((StanfordTextProcessor) textProcessor).annotateTags(texts, PIPELINE_DEFAULT);
+
+        assertEquals(Arrays.asList("winners", "John went home", "Pakistani elections"), new ArrayList<>(tags.keySet()));
+        for (String text : tags.keySet()) {
+            List<Tag> expected = textProcessor.annotateTags(text, PIPELINE_DEFAULT);
+            List<Tag> actual = tags.get(text);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getLemma(), actual.get(i).getLemma());
+                assertEquals(expected.get(i).getNe(), actual.get(i).getNe());
+            }
+        }
+    }
+
+    @Test
+    public void testRemovedPipelineGetsNoLookupPipeline() {
+        ExposedTextProcessor processor = new ExposedTextProcessor();
+        processor.init();
+        PipelineSpecification specification = new PipelineSpecification("removedLookup", "en", StanfordTextProcessor.class.getName());
+        specification.addProcessingStep("dependency");
+        processor.createPipeline(specification);
+        StanfordCoreNLP pipeline = processor.getPipeline("removedLookup");
+        processor.removePipeline("removedLookup");
+
+        long loaded = processor.getLoadedBytes();
+        assertSame(pipeline, processor.lookup(pipeline));
+        assertEquals(loaded, processor.getLoadedBytes());
+    }
+
+    private static class ExposedTextProcessor extends StanfordTextProcessor {
+
+        StanfordCoreNLP lookup(StanfordCoreNLP pipeline) {
+            return getLookupPipeline(pipeline);
+        }
+
+        long getLoadedBytes() {
+            return modelRegistry.getTotalBytes();
+        }
+
+        boolean hasBulkhead(String name) {
+            return threadBudget.isRegistered(name);
+        }
+    }
+
+    @Test
+    public void testPipelineRemovedWhileBuildingLeavesNothingBehind() throws Exception {
+        ExposedTextProcessor processor = new ExposedTextProcessor();
+        processor.init();
+        PipelineSpecification removed = new PipelineSpecification("removedWhileBuilding", "en", StanfordTextProcessor.class.getName());
+        removed.setStopWords("building");
+        PipelineSpecification next = new PipelineSpecification("builtAfterwards", "en", StanfordTextProcessor.class.getName());
+        processor.createPipelineAsync(removed);
+        processor.removePipeline("removedWhileBuilding");
+        processor.createPipelineAsync(next);
+
+        // the loader builds one pipeline at a time, so the removed one is done once the next one is
+        long deadline = System.currentTimeMillis() + 120000;
+        while (processor.getPipelineStatus("builtAfterwards") == PipelineStatus.LOADING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(processor.isPipelineReady("builtAfterwards"));
+        assertFalse(processor.hasBulkhead("removedWhileBuilding"));
+        assertNull(processor.getPipelineStatus("removedWhileBuilding"));
+        assertFalse(processor.checkPipeline("removedWhileBuilding"));
+        processor.removePipeline("builtAfterwards");
+    }
+
+    @Test
+    public void testPreloadedPipelinesReportTheirStatus() throws Exception {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification preloaded = new PipelineSpecification("preloaded", "en", StanfordTextProcessor.class.getName());
+        PipelineSpecification broken = new PipelineSpecification("preloadedBroken", "klingon", StanfordTextProcessor.class.getName());
+        processor.preload(Arrays.asList(preloaded, broken));
+
+        long deadline = System.currentTimeMillis() + 120000;
+        while ((processor.getPipelineStatus("preloaded") == PipelineStatus.LOADING
+                || processor.getPipelineStatus("preloadedBroken") == PipelineStatus.LOADING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(processor.isPipelineReady("preloaded"));
+        assertEquals(PipelineStatus.FAILED, processor.getPipelineStatus("preloadedBroken"));
+        assertFalse(processor.getPipelines().contains("preloadedBroken"));
+
+        // registering the same specification again, as done when the configuration is read, is a no-op
+        textProcessor.createPipeline(preloaded);
+        AnnotatedText annotatedText = textProcessor.annotateText("Preloaded pipelines are ready", preloaded);
+        assertEquals(1, annotatedText.getSentences().size());
+
+        textProcessor.removePipeline("preloaded");
+        textProcessor.removePipeline("preloadedBroken");
+        assertNull(processor.getPipelineStatus("preloaded"));
+    }
+
+    @Test
+    public void testConcurrentFirstUsesShareOnePipelineBuild() throws Exception {
+        PipelineSpecification specification = new PipelineSpecification("singleFlight", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("flight");
+        int callers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AnnotatedText>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return textProcessor.annotateText("One build serves every caller", specification);
+            }));
+        }
+        start.countDown();
+        for (Future<AnnotatedText> result : results) {
+            assertEquals(1, result.get(120, TimeUnit.SECONDS).getSentences().size());
+        }
+        executor.shutdown();
+        assertTrue(textProcessor.getPipelines().contains("singleFlight"));
+        textProcessor.removePipeline("singleFlight");
+    }
+
+    @Test
+    public void testAsyncPipelineCreationReturnsImmediately() throws Exception {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("async", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("async");
+        assertEquals(PipelineStatus.LOADING, processor.createPipelineAsync(specification));
+
+        PipelineSpecification other = new PipelineSpecification("async", "en", StanfordTextProcessor.class.getName());
+        other.addProcessingStep("dependency");
+        try {
+            processor.createPipelineAsync(other);
+            fail("A pipeline with the same name and other settings must be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("already exist"));
+        }
+
+        // waits for the running build instead of starting another one
+        textProcessor.createPipeline(specification);
+        assertTrue(processor.isPipelineReady("async"));
+        assertEquals(PipelineStatus.READY, processor.createPipelineAsync(specification));
+        textProcessor.removePipeline("async");
+    }
+
+    @Test
+    public void testEvictedPipelineIsLoadedAgainOnNextUse() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("evictable", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("evictable");
+        textProcessor.createPipeline(specification);
+
+        processor.evictPipeline("evictable");
+        assertEquals(PipelineStatus.EVICTED, processor.getPipelineStatus("evictable"));
+        assertTrue(textProcessor.getPipelines().contains("evictable"));
+
+        AnnotatedText annotatedText = textProcessor.annotateText("Evicted pipelines come back", specification);
+        assertEquals(1, annotatedText.getSentences().size());
+        assertTrue(processor.isPipelineReady("evictable"));
+
+        textProcessor.removePipeline("evictable");
+        assertFalse(textProcessor.getPipelines().contains("evictable"));
+    }
+
+    @Test
+    public void testPipelineInUseIsNotEvicted() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("busy", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("busy");
+        textProcessor.createPipeline(specification);
+        try {
+            String text = "The first chunk is annotated. The pipeline is evicted meanwhile. The last chunk still gets annotated.";
+            List<PipelineStatus> statuses = new ArrayList<>();
+            int count = processor.annotateTextInChunks(text, specification, 40, (sentence) -> {
+                processor.evictPipeline("busy");
+                statuses.add(processor.getPipelineStatus("busy"));
+            });
+
+            assertEquals(3, count);
+            assertEquals(Arrays.asList(PipelineStatus.READY, PipelineStatus.READY, PipelineStatus.READY), statuses);
+            processor.evictPipeline("busy");
+            assertEquals(PipelineStatus.EVICTED, processor.getPipelineStatus("busy"));
+            assertEquals(1, textProcessor.annotateText("Evicted pipelines keep their bulkhead", specification).getSentences().size());
+        } finally {
+            textProcessor.removePipeline("busy");
+        }
+    }
+
+    @Test
+    public void testPipelineRemovedInUseFinishesItsAnnotation() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("removedBusy", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("busy");
+        textProcessor.createPipeline(specification);
+        String text = "The first chunk is annotated. The pipeline is removed meanwhile. The last chunk still gets annotated.";
+        List<Integer> sentences = new ArrayList<>();
+        int count = processor.annotateTextInChunks(text, specification, 40, (sentence) -> {
+            textProcessor.removePipeline("removedBusy");
+            sentences.add(sentence.getSentenceNumber());
+        });
+
+        assertEquals(3, count);
+        assertEquals(Arrays.asList(0, 1, 2), sentences);
+        assertFalse(textProcessor.checkPipeline("removedBusy"));
+    }
+
+    @Test
+    public void testPipelineFootprintListsItsAnnotators() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        Map<String, Long> footprint = processor.getPipelineFootprint("default");
+
+        assertTrue(footprint.keySet().containsAll(Arrays.asList("tokenize", "ssplit", "pos", "lemma", "ner")));
+        assertTrue(footprint.values().stream().allMatch(bytes -> bytes >= 0));
+        assertEquals(footprint, processor.getPipelineFootprints().get("default"));
+        assertTrue(processor.getModelsFootprint() >= footprint.values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(processor.getPipelineFootprint("missing").isEmpty());
+    }
+
+    @Test
+    public void testPipelinesWithSameStopwordsShareTheAnnotator() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        List<String> names = Arrays.asList("sharedStopwords1", "sharedStopwords2", "otherStopwords");
+        List<String> stopwords = Arrays.asList("shared, stop, words", "shared, stop, words", "other, words");
+        List<String> annotators = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            PipelineSpecification specification = new PipelineSpecification(names.get(i), "en", StanfordTextProcessor.class.getName());
+            specification.setStopWords(stopwords.get(i));
+            textProcessor.createPipeline(specification);
+            annotators.add(processor.getPipelineFootprint(names.get(i)).keySet().stream()
+                    .filter(annotator -> annotator.startsWith("stopword_"))
+                    .findFirst().orElse(null));
+        }
+
+        assertNotNull(annotators.get(0));
+        assertEquals(annotators.get(0), annotators.get(1));
+        assertNotEquals(annotators.get(0), annotators.get(2));
+        names.forEach(textProcessor::removePipeline);
+    }
+
+    @Test
+    public void testRemovingThePipelineReleasesItsAnnotators() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("released", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("released, annotators");
+        textProcessor.createPipeline(specification);
+        String stopword = processor.getPipelineFootprint("released").keySet().stream()
+                .filter(annotator -> annotator.startsWith("stopword_"))
+                .findFirst().orElse(null);
+        assertNotNull(stopword);
+        assertTrue(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.keySet().stream().anyMatch(signature -> signature.name.equals(stopword)));
+
+        assertTrue(processor.removePipelineAndMeasure("released") >= 0);
+        assertFalse(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.keySet().stream().anyMatch(signature -> signature.name.equals(stopword)));
+        assertTrue(processor.getPipelineFootprint("default").containsKey("ner"));
+    }
+
+    @Test
+    public void testStopWordsAreUpdatedInPlace() {
+        StanfordTextProcessor processor = (StanfordTextProcessor) textProcessor;
+        PipelineSpecification specification = new PipelineSpecification("updatable", "en", StanfordTextProcessor.class.getName());
+        specification.setStopWords("+,moon");
+        textProcessor.createPipeline(specification);
+        assertEquals(new HashSet<>(Arrays.asList("sun", "shine")), lemmas("The sun and the moon shine", specification));
+        Set<String> previous = processor.getPipelineFootprint("updatable").keySet();
+
+        processor.updateStopWords("updatable", "+,sun", null);
+        assertEquals(new HashSet<>(Arrays.asList("moon", "shine")), lemmas("The sun and the moon shine", specification));
+        Set<String> current = processor.getPipelineFootprint("updatable").keySet();
+        assertEquals(previous.size(), current.size());
+        assertEquals(1, previous.stream().filter(annotator -> !current.contains(annotator)).count());
+        assertTrue(previous.stream().filter(annotator -> !current.contains(annotator)).allMatch(annotator -> annotator.startsWith("stopword_")));
+
+        processor.evictPipeline("updatable");
+        textProcessor.createPipeline(specification);
+        assertEquals(new HashSet<>(Arrays.asList("moon", "shine")), lemmas("The sun and the moon shine", specification));
+        textProcessor.removePipeline("updatable");
+    }
+
+    @Test
+    public void testCachedResultsFollowTheStopWordsOfTheirPipeline() {
+        System.setProperty(StanfordTextProcessor.CACHE_MAX_BYTES, "1000000");
+        StanfordTextProcessor processor;
+        try {
+            processor = new StanfordTextProcessor();
+        } finally {
+            System.clearProperty(StanfordTextProcessor.CACHE_MAX_BYTES);
+        }
+        processor.init();
+        PipelineSpecification first = new PipelineSpecification("cachedFirst", "en", StanfordTextProcessor.class.getName());
+        first.setStopWords("+,moon");
+        PipelineSpecification second = new PipelineSpecification("cachedSecond", "en", StanfordTextProcessor.class.getName());
+        second.setStopWords("+,moon");
+        processor.createPipeline(first);
+        processor.createPipeline(second);
+
+        processor.updateStopWords("cachedFirst", "+,sun", null);
+        assertEquals(new HashSet<>(Arrays.asList("moon", "shine")), lemmas(processor, "The sun and the moon shine", first));
+        assertEquals(new HashSet<>(Arrays.asList("sun", "shine")), lemmas(processor, "The sun and the moon shine", second));
+
+        AnnotatedText annotatedText = processor.annotateText("The sun and the moon shine", second);
+        annotatedText.getSentences().get(0).setSentiment(4);
+        assertEquals(Sentence.NO_SENTIMENT, processor.annotateText("The sun and the moon shine", second).getSentences().get(0).getSentiment());
+        processor.removePipeline("cachedFirst");
+        processor.removePipeline("cachedSecond");
+    }
+
+    private Set<String> lemmas(String text, PipelineSpecification specification) {
+        return lemmas(textProcessor, text, specification);
+    }
+
+    private static Set<String> lemmas(TextProcessor processor, String text, PipelineSpecification specification) {
+        Set<String> lemmas = new HashSet<>();
+        processor.annotateText(text, specification).getSentences()
+                .forEach(sentence -> sentence.getTags().values().forEach(tag -> lemmas.add(tag.getLemma())));
+        return lemmas;
+    }
+
     @Test
     public void testAnnotationAndConcept() {
         // ConceptNet5Importer.Builder() - arguments need fixing
@@ -213,6 +542,107 @@ public class TextProcessorTest {
         test.assertTagsCountInSentence(5, 0);
     }
     
+    @Test
+    public void testAnnotateTextsKeepsInputOrder() {
+        List<String> texts = Arrays.asList(
+                "Fixing Batch Endpoint Logging Problem",
+                "Importing CSV data does nothing. The import should create nodes.",
+                "My name is John Doe and I work in Switzerland");
+        List<AnnotatedText> annotatedTexts = ((StanfordTextProcessor) textProcessor).annotateTexts(texts, PIPELINE_DEFAULT);
+
+        assertEquals(3, annotatedTexts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            AnnotatedText expected = textProcessor.annotateText(texts.get(i), PIPELINE_DEFAULT);
+            AnnotatedText actual = annotatedTexts.get(i);
+            assertEquals(expected.getSentences().size(), actual.getSentences().size());
+            assertEquals(expected.getSentences().get(0).getSentence(), actual.getSentences().get(0).getSentence());
+            assertEquals(expected.getTags().size(), actual.getTags().size());
+        }
+    }
+
+    @Test
+    public void testAnnotateTextInChunksKeepsGlobalOffsets() {
+        PipelineSpecification specification = new PipelineSpecification("chunked", "en", StanfordTextProcessor.class.getName());
+        specification.addProcessingStep("dependency");
+        textProcessor.createPipeline(specification);
+        String text = "Importing CSV data does nothing. The import should create nodes.\n\n"
+                + "My name is John Doe and I work in Switzerland. I moved there in 2015.\n\n"
+                + "The chart in Figure 1 shows varying sentiment on the candidates for prime minister of Pakistan.";
+        AnnotatedText expected = textProcessor.annotateText(text, specification);
+        List<Sentence> sentences = new ArrayList<>();
+        int count = ((StanfordTextProcessor) textProcessor).annotateTextInChunks(text, specification, 120, sentences::add);
+
+        assertEquals(expected.getSentences().size(), count);
+        assertEquals(expected.getSentences().size(), sentences.size());
+        for (int i = 0; i < sentences.size(); i++) {
+            Sentence expectedSentence = expected.getSentences().get(i);
+            Sentence actual = sentences.get(i);
+            assertEquals(i, actual.getSentenceNumber());
+            assertEquals(expectedSentence.getSentence(), actual.getSentence());
+            assertEquals(expectedSentence.getTagOccurrences().keySet(), actual.getTagOccurrences().keySet());
+            assertEquals(expectedSentence.getTypedDependencies().size(), actual.getTypedDependencies().size());
+            for (int j = 0; j < actual.getTypedDependencies().size(); j++) {
+                assertEquals(expectedSentence.getTypedDependencies().get(j).getSource(), actual.getTypedDependencies().get(j).getSource());
+                assertEquals(expectedSentence.getTypedDependencies().get(j).getTarget(), actual.getTypedDependencies().get(j).getTarget());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelExtractionKeepsSentenceOrder() {
+        String text = "Importing CSV data does nothing. The import should create nodes. "
+                + "My name is John Doe and I work in Switzerland. I moved there in 2015. "
+                + "The chart in Figure 1 shows varying sentiment on the candidates for prime minister of Pakistan.";
+        AnnotatedText sequential = textProcessor.annotateText(text, PIPELINE_DEFAULT);
+        System.setProperty(StanfordTextProcessor.EXTRACTION_PARALLEL_THRESHOLD, "1");
+        try {
+            AnnotatedText parallel = textProcessor.annotateText(text, PIPELINE_DEFAULT);
+            assertEquals(sequential.getSentences().size(), parallel.getSentences().size());
+            for (int i = 0; i < parallel.getSentences().size(); i++) {
+                assertEquals(i, parallel.getSentences().get(i).getSentenceNumber());
+                assertEquals(sequential.getSentences().get(i).getSentence(), parallel.getSentences().get(i).getSentence());
+                assertEquals(sequential.getSentences().get(i).getTagOccurrences().keySet(), parallel.getSentences().get(i).getTagOccurrences().keySet());
+            }
+        } finally {
+            System.clearProperty(StanfordTextProcessor.EXTRACTION_PARALLEL_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testOnlyWhitelistedTokensBecomeTags() {
+        PipelineSpecification specification = new PipelineSpecification("whitelisted", "en", StanfordTextProcessor.class.getName());
+        specification.setWhitelist("work, Switzerland,john");
+        textProcessor.createPipeline(specification);
+        try {
+            AnnotatedText annotatedText = textProcessor.annotateText("My name is John Doe and I work in Switzerland", specification);
+
+            Set<String> lemmas = new HashSet<>();
+            annotatedText.getTags().forEach(tag -> lemmas.add(tag.getLemma()));
+            assertEquals(new HashSet<>(Arrays.asList("work", "Switzerland")), lemmas);
+            assertEquals(2, annotatedText.getSentences().get(0).getTagOccurrences().size());
+        } finally {
+            textProcessor.removePipeline("whitelisted");
+        }
+    }
+
+    @Test
+    public void testSentimentOfAnnotatedTextMatchesPipelineSentiment() {
+        PipelineSpecification specification = new PipelineSpecification(StanfordTextProcessor.SENTIMENT, "en", StanfordTextProcessor.class.getName());
+        specification.addProcessingStep("sentiment");
+        textProcessor.createPipeline(specification);
+        String text = "I liked so much to study at Stanford, I enjoyed my time there. "
+                + "The food was terrible and the rooms were dirty. "
+                + "The lessons started at nine.";
+        AnnotatedText expected = textProcessor.annotateText(text, specification);
+        AnnotatedText annotatedText = textProcessor.sentiment(textProcessor.annotateText(text, PIPELINE_DEFAULT));
+
+        assertEquals(expected.getSentences().size(), annotatedText.getSentences().size());
+        for (int i = 0; i < expected.getSentences().size(); i++) {
+            assertEquals(expected.getSentences().get(i).getSentiment(), annotatedText.getSentences().get(i).getSentiment());
+        }
+        textProcessor.removePipeline(StanfordTextProcessor.SENTIMENT);
+    }
+
     @Test
     public void testAnnotatedShortText2() {
         AnnotatedText annotateText = textProcessor.annotateText("Importing CSV data does nothing", PIPELINE_DEFAULT);
@@ -0,0 +1,143 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.stanford.StanfordTextProcessor;
+import com.graphaware.nlp.processor.stanford.cache.AnnotationCache;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnnotationCacheTest {
+
+    @Test
+    public void testEquivalentSpecificationsShareEntries() {
+        AnnotationCache cache = new AnnotationCache(1024 * 1024);
+        AtomicInteger calls = new AtomicInteger();
+        AnnotatedText first = cache.get("some text", specification("a", "sentiment"), () -> annotate("some text", calls));
+        AnnotatedText second = cache.get("some text", specification("a", "sentiment"), () -> annotate("some text", calls));
+        assertEquals(first.getSentences().get(0).getSentence(), second.getSentences().get(0).getSentence());
+        assertEquals(1, calls.get());
+
+        cache.get("some text", specification("b", "sentiment"), () -> annotate("some text", calls));
+        cache.get("some text", specification("a", "dependency"), () -> annotate("some text", calls));
+        cache.get("other text", specification("a", "sentiment"), () -> annotate("other text", calls));
+        assertEquals(4, calls.get());
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEveryCallerGetsItsOwnCopy() {
+        AnnotationCache cache = new AnnotationCache(1024 * 1024);
+        AtomicInteger calls = new AtomicInteger();
+        AnnotatedText first = cache.get("some text", specification("a", "sentiment"), () -> annotate("some text", calls));
+        first.getSentences().get(0).setSentiment(4);
+        first.getSentences().get(0).getTag("some").addParent("IsA", new Tag("quantity", "en"));
+
+        AnnotatedText second = cache.get("some text", specification("a", "sentiment"), () -> annotate("some text", calls));
+        assertEquals(1, calls.get());
+        assertNotSame(first, second);
+        Sentence sentence = second.getSentences().get(0);
+        assertEquals(Sentence.NO_SENTIMENT, sentence.getSentiment());
+        assertTrue(sentence.getTag("some").getParents().isEmpty());
+        assertSame(sentence.getTag("some"), sentence.getTagOccurrence(0));
+        assertEquals(2, sentence.getTagOccurrences().size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvictedByWeight() {
+        String text = "a sentence of some length";
+        long entrySize = AnnotationCache.estimateSize(text, annotate(text, new AtomicInteger()));
+        AnnotationCache cache = new AnnotationCache(2 * entrySize);
+        AtomicInteger calls = new AtomicInteger();
+        PipelineSpecification first = specification("a", "sentiment");
+        PipelineSpecification second = specification("a", "dependency");
+        PipelineSpecification third = specification("a", "relations");
+
+        cache.get(text, first, () -> annotate(text, calls));
+        cache.get(text, second, () -> annotate(text, calls));
+        cache.get(text, first, () -> annotate(text, calls));
+        cache.get(text, third, () -> annotate(text, calls));
+        assertEquals(2, cache.size());
+        assertTrue(cache.getWeight() <= cache.getMaxBytes());
+
+        cache.get(text, first, () -> annotate(text, calls));
+        assertEquals(3, calls.get());
+        cache.get(text, second, () -> annotate(text, calls));
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        AnnotationCache cache = new AnnotationCache(1024 * 1024);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Callable<AnnotatedText> request = () -> cache.get("text", specification("a", "sentiment"), () -> {
+            started.countDown();
+            await(release);
+            return annotate("text", calls);
+        });
+        Future<AnnotatedText> first = executor.submit(request);
+        started.await(5, TimeUnit.SECONDS);
+        Future<AnnotatedText> second = executor.submit(request);
+        Future<AnnotatedText> third = executor.submit(request);
+        Thread.sleep(100);
+        release.countDown();
+
+        assertNotSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertNotSame(first.get(), third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(2, cache.getCoalesced() + cache.getHits());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        AnnotationCache cache = new AnnotationCache(1024 * 1024);
+        try {
+            cache.get("text", specification("a", "sentiment"), () -> {
+                throw new IllegalStateException("boom");
+            });
+            fail("Expected the annotation to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+        assertNotNull(cache.get("text", specification("a", "sentiment"), () -> annotate("text", new AtomicInteger())));
+    }
+
+    private static PipelineSpecification specification(String name, String step) {
+        PipelineSpecification specification = new PipelineSpecification(name, StanfordTextProcessor.class.getName());
+        specification.addProcessingStep(step);
+        return specification;
+    }
+
+    private static AnnotatedText annotate(String text, AtomicInteger calls) {
+        calls.incrementAndGet();
+        AnnotatedText annotatedText = new AnnotatedText();
+        Sentence sentence = new Sentence(text, 0);
+        int begin = 0;
+        for (String word : text.split(" ")) {
+            sentence.addTagOccurrence(begin, begin + word.length(), word, sentence.addTag(new Tag(word, "en")));
+            begin += word.length() + 1;
+        }
+        annotatedText.addSentence(sentence);
+        return annotatedText;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.concurrent.BoundedExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BoundedExecutorTest {
+
+    @Test
+    public void testTasksBeyondCapacityAreRejected() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture<Integer> running = executor.submit(() -> await(latch, 1), 0, TimeUnit.MILLISECONDS);
+        CompletableFuture<Integer> queued = executor.submit(() -> 2, 0, TimeUnit.MILLISECONDS);
+        assertEquals(2, executor.getPendingTasks());
+
+        try {
+            executor.submit(() -> 3, 50, TimeUnit.MILLISECONDS);
+            fail("Expected the third task to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        latch.countDown();
+        assertEquals(1, (int) running.get(5, TimeUnit.SECONDS));
+        assertEquals(2, (int) queued.get(5, TimeUnit.SECONDS));
+        assertEquals(4, (int) executor.submit(() -> 4, 1, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailedTaskCompletesFutureExceptionallyAndFreesItsSlot() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 0);
+        CompletableFuture<Object> failing = executor.submit(() -> {
+            throw new IllegalStateException("boom");
+        }, 0, TimeUnit.MILLISECONDS);
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("Expected the task to fail");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("ok", executor.submit(() -> "ok", 1, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private static int await(CountDownLatch latch, int value) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,72 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.annotators.CharSequenceSet;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CharSequenceSetTest {
+
+    @Test
+    public void testCaseSensitiveLookups() {
+        CharSequenceSet set = new CharSequenceSet(2, false);
+        assertTrue(set.add("the"));
+        assertTrue(set.add("The"));
+        assertFalse(set.add("the"));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("the"));
+        assertTrue(set.contains(new StringBuilder("The")));
+        assertFalse(set.contains("THE"));
+        assertTrue(set.containsLowerCase("THE"));
+        assertFalse(set.contains("th"));
+        assertTrue(set.contains("other".toCharArray(), 1, 3));
+    }
+
+    @Test
+    public void testCaseInsensitiveLookups() {
+        CharSequenceSet set = new CharSequenceSet(1, true);
+        set.add("Of");
+
+        assertTrue(set.contains("of"));
+        assertTrue(set.contains("OF"));
+        assertTrue(set.containsLowerCase("oF"));
+        assertFalse(set.contains("off"));
+    }
+
+    @Test
+    public void testSetGrowsPastItsExpectedSize() {
+        CharSequenceSet set = new CharSequenceSet(1, false);
+        for (int i = 0; i < 1000; i++) {
+            set.add("term" + i);
+        }
+        assertEquals(1000, set.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.contains("term" + i));
+        }
+        assertFalse(set.contains("term1000"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiableSetIsReadOnly() {
+        CharSequenceSet set = new CharSequenceSet(1, false);
+        set.add("a");
+        CharSequenceSet readOnly = CharSequenceSet.unmodifiableSet(set);
+        assertTrue(readOnly.contains("a"));
+        readOnly.add("b");
+    }
+
+    @Test
+    public void testCopyOfCharArraysAndEnglishDefaults() {
+        CharSequenceSet set = CharSequenceSet.copyOf(Arrays.asList("and".toCharArray(), "Or"), true);
+        assertTrue(set.contains("AND"));
+        assertTrue(set.contains("or"));
+
+        CharSequenceSet english = CharSequenceSet.englishStopWords();
+        assertEquals(33, english.size());
+        assertTrue(english.containsLowerCase("The"));
+        assertFalse(english.contains("neo4j"));
+    }
+}
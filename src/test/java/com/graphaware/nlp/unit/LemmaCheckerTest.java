@@ -0,0 +1,39 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.AbstractTextProcessor;
+import com.graphaware.nlp.processor.stanford.LemmaChecker;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LemmaCheckerTest {
+
+    private static final Pattern REGEX = Pattern.compile(AbstractTextProcessor.PUNCT_REGEX_PATTERN, Pattern.CASE_INSENSITIVE);
+
+    @Test
+    public void testSameVerdictsAsTheRegex() {
+        for (String value : Arrays.asList("", "a", "word", "Zürich", "über-cool", "rock'n'roll", "e.g", "e.g.", "New York",
+                "New  York", "-a", "a-", "a--b", "a -b", "1984", "x_1", "€", "$5", "!", "ab\n", "ab\r\n", "ab\r", "ab\n\n",
+                "ab\u2028", "ab\u0085", "\n", "a\nb", "日本語", "𝐀bc", "a\ud835", "ab\t", "  ", "A.B.C", "co-op.")) {
+            assertEquals(value, REGEX.matcher(value).find(), LemmaChecker.isValid(value));
+        }
+    }
+
+    @Test
+    public void testRandomStringsAgreeWithTheRegex() {
+        char[] alphabet = {'a', 'Z', '0', '9', 'é', '-', '_', '\'', '.', ' ', ',', '\n', '\r', ' ', '\ud835', '\udc00', '!', '日'};
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+            char[] value = new char[random.nextInt(6)];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String text = new String(value);
+            assertEquals(text, REGEX.matcher(text).find(), LemmaChecker.isValid(text));
+        }
+    }
+}
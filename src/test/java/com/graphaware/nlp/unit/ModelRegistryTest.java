@@ -0,0 +1,122 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.annotators.StopwordAnnotator;
+import com.graphaware.nlp.processor.stanford.model.ModelRegistry;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ModelRegistryTest {
+
+    @Test
+    public void testPipelinesWithSameSettingsShareAnnotators() {
+        ModelRegistry registry = new ModelRegistry();
+        Properties properties = properties("tokenize, ssplit");
+        StanfordCoreNLP first = registry.load(properties);
+        StanfordCoreNLP second = registry.load(properties("tokenize, ssplit"));
+
+        assertEquals(2, registry.size());
+        assertEquals(2, registry.getReferenceCount("tokenize", properties));
+        assertEquals(2, registry.getReferenceCount("ssplit", properties));
+
+        Annotation document = new Annotation("Registries share annotators. Pipelines stay independent.");
+        second.annotate(document);
+        assertNotNull(document.get(edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation.class));
+
+        assertTrue(registry.release(first).isEmpty());
+        assertEquals(1, registry.getReferenceCount("tokenize", properties));
+        List<StanfordCoreNLP.AnnotatorSignature> unloaded = registry.release(second);
+        assertEquals(2, unloaded.size());
+        assertEquals(0, registry.size());
+        assertTrue(registry.release(second).isEmpty());
+    }
+
+    @Test
+    public void testDifferentSettingsGetDifferentAnnotators() {
+        ModelRegistry registry = new ModelRegistry();
+        Properties whitespace = properties("tokenize, ssplit");
+        whitespace.setProperty("tokenize.whitespace", "true");
+        Properties ptb = properties("tokenize, ssplit");
+        registry.load(ptb);
+        registry.load(whitespace);
+
+        assertEquals(1, registry.getReferenceCount("tokenize", ptb));
+        assertEquals(1, registry.getReferenceCount("tokenize", whitespace));
+        assertNotEquals(ModelRegistry.signature("tokenize", ptb), ModelRegistry.signature("tokenize", whitespace));
+    }
+
+    @Test
+    public void testFootprintIsReportedPerAnnotator() {
+        ModelRegistry registry = new ModelRegistry();
+        StanfordCoreNLP first = registry.load(properties("tokenize, ssplit"));
+        StanfordCoreNLP second = registry.load(properties("tokenize, ssplit"));
+
+        Map<String, Long> footprint = registry.getFootprint(first);
+        assertEquals(Arrays.asList("tokenize", "ssplit"), new ArrayList<>(footprint.keySet()));
+        assertEquals(footprint, registry.getFootprint(second));
+        assertEquals(footprint.values().stream().mapToLong(Long::longValue).sum(), registry.getTotalBytes());
+        assertEquals(registry.getTotalBytes(), registry.getLoadedBytes(first));
+        assertEquals(0, registry.getLoadedBytes(second));
+
+        registry.release(first);
+        registry.release(second);
+        assertTrue(registry.getFootprint(first).isEmpty());
+        assertEquals(0, registry.getTotalBytes());
+    }
+
+    @Test
+    public void testModelsAreEstimatedFromTheirFiles() {
+        ModelRegistry registry = new ModelRegistry();
+        StanfordCoreNLP pipeline = registry.load(properties("tokenize, ssplit, pos"));
+
+        long pos = registry.getFootprint(pipeline).get("pos");
+        assertTrue("pos model estimated as " + pos + " bytes", pos > 1_000_000L);
+        Properties named = properties("tokenize, ssplit, pos");
+        named.setProperty("pos.model", DefaultPaths.DEFAULT_POS_MODEL);
+        ModelRegistry other = new ModelRegistry();
+        StanfordCoreNLP namedPipeline = other.load(named);
+        assertEquals(pos, (long) other.getFootprint(namedPipeline).get("pos"));
+        registry.release(pipeline);
+        other.release(namedPipeline);
+    }
+
+    @Test
+    public void testReleasingTheLastPipelineClearsTheCoreNLPCache() {
+        ModelRegistry registry = new ModelRegistry();
+        Properties properties = properties("tokenize, ssplit");
+        properties.setProperty("tokenize.language", "en");
+        StanfordCoreNLP first = registry.load(properties);
+        StanfordCoreNLP second = registry.load(properties);
+        StanfordCoreNLP.AnnotatorSignature tokenize = ModelRegistry.coreSignature("tokenize", properties);
+        assertNotNull(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.get(tokenize));
+
+        registry.release(first);
+        assertNotNull(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.get(tokenize));
+        registry.release(second);
+        assertNull(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.get(tokenize));
+        assertNull(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.get(ModelRegistry.coreSignature("ssplit", properties)));
+    }
+
+    @Test
+    public void testCustomAnnotatorsAreKeyedByTheirSettings() {
+        Properties first = properties("tokenize, ssplit, stopword");
+        first.setProperty("customAnnotatorClass.stopword", StopwordAnnotator.class.getName());
+        first.setProperty(StopwordAnnotator.STOPWORDS_LIST, "a, the");
+        Properties second = (Properties) first.clone();
+        second.setProperty(StopwordAnnotator.STOPWORDS_LIST, "a, an");
+
+        assertEquals(ModelRegistry.signature("stopword", first), ModelRegistry.signature("stopword", (Properties) first.clone()));
+        assertNotEquals(ModelRegistry.signature("stopword", first), ModelRegistry.signature("stopword", second));
+    }
+
+    private static Properties properties(String annotators) {
+        Properties properties = new Properties();
+        properties.setProperty("annotators", annotators);
+        return properties;
+    }
+}
@@ -0,0 +1,59 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.PipelineEviction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PipelineEvictionTest {
+
+    @Test
+    public void testLeastRecentlyUsedPipelinesAreEvictedFirst() {
+        AtomicLong clock = new AtomicLong();
+        PipelineEviction eviction = new PipelineEviction(100, 0, clock::get);
+        eviction.loaded("a");
+        clock.incrementAndGet();
+        eviction.loaded("b");
+        clock.incrementAndGet();
+        eviction.used("a");
+        clock.incrementAndGet();
+        eviction.loaded("c");
+
+        assertEquals(Arrays.asList("b", "a"), eviction.evictionOrder("c"));
+        eviction.unloaded("b");
+        assertEquals(Collections.singletonList("a"), eviction.evictionOrder("c"));
+    }
+
+    @Test
+    public void testBudgetIsCheckedAgainstTheLoadedModels() {
+        PipelineEviction eviction = new PipelineEviction(100, 0);
+        assertFalse(eviction.isOverBudget(100));
+        assertTrue(eviction.isOverBudget(101));
+        assertFalse(new PipelineEviction(0, 1000).isOverBudget(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testIdlePipelines() {
+        AtomicLong clock = new AtomicLong();
+        PipelineEviction eviction = new PipelineEviction(0, 1000, clock::get);
+        eviction.loaded("a");
+        eviction.loaded("b");
+        clock.set(800);
+        eviction.used("b");
+        clock.set(1500);
+
+        assertEquals(Collections.singletonList("a"), eviction.idle());
+        assertTrue(eviction.evictionOrder("b").isEmpty());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(new PipelineEviction(0, 0).isEnabled());
+        assertTrue(new PipelineEviction(1, 0).isEnabled());
+        assertTrue(new PipelineEviction(0, 1).isEnabled());
+    }
+}
@@ -0,0 +1,61 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.AbstractTextProcessor;
+import com.graphaware.nlp.processor.stanford.PipelinePlan;
+import com.graphaware.nlp.processor.stanford.StanfordTextProcessor;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PipelinePlanTest {
+
+    @Test
+    public void testStepsAndExclusionsAreResolved() {
+        PipelineSpecification specification = specification(Arrays.asList("DATE", "NUMBER"));
+        PipelinePlan plan = PipelinePlan.compile(specification);
+        assertTrue(plan.hasNER());
+        assertTrue(plan.hasSentiment());
+        assertFalse(plan.hasDependency());
+        assertFalse(plan.hasRelations());
+        assertTrue(plan.isExcludedNE("DATE"));
+        assertFalse(plan.isExcludedNE("PERSON"));
+        assertFalse(plan.hasWhitelist());
+        assertEquals(AbstractTextProcessor.DEFAULT_STOP_WORD_LIST, plan.getStopWordList());
+    }
+
+    @Test
+    public void testPlanIsReusedForEquivalentSpecifications() {
+        PipelinePlan plan = PipelinePlan.compile(specification(Collections.singletonList("DATE")));
+        assertTrue(plan.isCompiledFrom(specification(Collections.singletonList("DATE"))));
+        assertFalse(plan.isCompiledFrom(specification(Collections.singletonList("NUMBER"))));
+    }
+
+    @Test
+    public void testWhitelistAndCustomStopwords() {
+        PipelineSpecification specification = specification(Collections.emptyList());
+        specification.setWhitelist("Neo4j, graph ");
+        specification.setStopWords("+,foo");
+        PipelinePlan plan = PipelinePlan.compile(specification);
+        assertTrue(plan.isWhitelisted("neo4j"));
+        assertTrue(plan.isWhitelisted("graph"));
+        assertFalse(plan.isWhitelisted("database"));
+        assertEquals(AbstractTextProcessor.DEFAULT_STOP_WORD_LIST + ",foo", plan.getStopWordList());
+
+        specification.setStopWords("foo");
+        assertEquals("", PipelinePlan.compile(specification).getStopWordList());
+    }
+
+    private static PipelineSpecification specification(List<String> excludedNER) {
+        Map<String, Object> steps = new HashMap<>();
+        steps.put(AbstractTextProcessor.STEP_TOKENIZE, true);
+        steps.put(AbstractTextProcessor.STEP_SENTIMENT, true);
+        return new PipelineSpecification("plan", "en", StanfordTextProcessor.class.getName(), steps, null, 1L, excludedNER, Collections.emptyList());
+    }
+}
@@ -0,0 +1,59 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.stanford.PreloadConfiguration;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class PreloadConfigurationTest {
+
+    @Test
+    public void testPipelinesAreReadInOrder() {
+        Properties properties = new Properties();
+        properties.setProperty("pipelines", "default, german");
+        properties.setProperty("default.language", "en");
+        properties.setProperty("default.processingSteps", "tokenize,ner,dependency");
+        properties.setProperty("default.threadNumber", "4");
+        properties.setProperty("default.excludedNER", "MONEY, DATE");
+        properties.setProperty("german.language", "de");
+        properties.setProperty("german.processingSteps", "tokenize, customNER:music");
+        properties.setProperty("german.stopWords", "+,aber");
+        properties.setProperty("german.whitelist", "violine");
+
+        List<PipelineSpecification> specifications = PreloadConfiguration.read(properties);
+
+        assertEquals(2, specifications.size());
+        PipelineSpecification first = specifications.get(0);
+        assertEquals("default", first.getName());
+        assertEquals("en", first.getLanguage());
+        assertTrue(first.hasProcessingStep("dependency"));
+        assertEquals(4L, first.getThreadNumber());
+        assertEquals(Arrays.asList("MONEY", "DATE"), first.getExcludedNER());
+        assertEquals(Collections.emptyList(), first.getExcludedPOS());
+
+        PipelineSpecification second = specifications.get(1);
+        assertEquals("german", second.getName());
+        assertEquals("music", second.getProcessingStepAsString("customNER"));
+        assertEquals("+,aber", second.getStopWords());
+        assertEquals("violine", second.getWhitelist());
+        assertEquals(1L, second.getThreadNumber());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPipelineWithoutLanguageIsRejected() {
+        Properties properties = new Properties();
+        properties.setProperty("pipelines", "default");
+        PreloadConfiguration.read(properties);
+    }
+
+    @Test
+    public void testNoPipelines() {
+        assertTrue(PreloadConfiguration.read(new Properties()).isEmpty());
+    }
+}
@@ -0,0 +1,47 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.annotators.StopwordAnnotator;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class StopwordAnnotatorTest {
+
+    @Test
+    public void testWordsAndLemmasAreMarked() {
+        Properties properties = new Properties();
+        properties.setProperty(StopwordAnnotator.STOPWORDS_LIST, "the, be");
+        properties.setProperty(StopwordAnnotator.CHECK_LEMMA, "true");
+        StopwordAnnotator annotator = new StopwordAnnotator("stopword", properties);
+
+        List<CoreLabel> tokens = new ArrayList<>();
+        tokens.add(token("The", "the"));
+        tokens.add(token("Moon", "moon"));
+        tokens.add(token("is", "be"));
+        tokens.add(token("moons", "moon"));
+        Annotation annotation = new Annotation("The Moon is moons");
+        annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+        annotator.annotate(annotation);
+
+        assertTrue(StopwordAnnotator.isStopword(tokens.get(0)));
+        assertFalse(StopwordAnnotator.isStopword(tokens.get(1)));
+        assertTrue(StopwordAnnotator.isStopword(tokens.get(2)));
+        assertFalse(tokens.get(2).get(StopwordAnnotator.class).first());
+        assertTrue(tokens.get(2).get(StopwordAnnotator.class).second());
+        assertSame(tokens.get(1).get(StopwordAnnotator.class), tokens.get(3).get(StopwordAnnotator.class));
+    }
+
+    private static CoreLabel token(String word, String lemma) {
+        CoreLabel token = new CoreLabel();
+        token.setWord(word);
+        token.setLemma(lemma);
+        return token;
+    }
+}
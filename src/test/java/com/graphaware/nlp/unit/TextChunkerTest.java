@@ -0,0 +1,30 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.TextChunker;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TextChunkerTest {
+
+    @Test
+    public void testChunksPreferParagraphsThenSentences() {
+        String text = "First sentence here. Second one.\n\nNew paragraph starts. And goes on for a while.";
+        assertEquals(Arrays.asList(0, 34), new TextChunker(50).split(text));
+        assertEquals(Arrays.asList(0, 21, 48, 74), new TextChunker(30).split(text));
+    }
+
+    @Test
+    public void testShortTextIsASingleChunk() {
+        assertEquals(Collections.singletonList(0), new TextChunker(100).split("Short text."));
+        assertEquals(Collections.singletonList(0), new TextChunker(100).split(""));
+    }
+
+    @Test
+    public void testTextWithoutBreaksIsCutAtTheLimit() {
+        assertEquals(Arrays.asList(0, 4, 8), new TextChunker(4).split("abcdefghij"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.concurrent.ThreadBudget;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ThreadBudgetTest {
+
+    @Test
+    public void testBulkheadLimitsAreCappedByTheGlobalBudget() {
+        ThreadBudget budget = new ThreadBudget(8);
+        assertEquals(4, budget.register("a", 4, 0));
+        assertEquals(8, budget.register("b", 16, 0));
+        assertEquals(2, budget.register("c", 4, 0.25));
+        assertEquals(1, budget.register("d", 4, 0.01));
+        budget.unregister("a");
+        assertEquals(1, budget.getLimit("a"));
+    }
+
+    @Test
+    public void testSlowPipelineDoesNotStarveTheOthers() throws Exception {
+        ThreadBudget budget = new ThreadBudget(4);
+        budget.register("slow", 2, 0);
+        budget.register("fast", 2, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxSlow = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            executor.submit(() -> budget.run("slow", 1, () -> {
+                maxSlow.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+
+        Thread.sleep(100);
+        assertEquals(2, budget.getUsedThreads());
+        assertEquals("done", budget.run("fast", 2, () -> "done"));
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, maxSlow.get());
+        assertEquals(0, budget.getUsedThreads());
+    }
+
+    @Test
+    public void testUnregisteredPipelineRunsOnTheGlobalBudget() {
+        ThreadBudget budget = new ThreadBudget(2);
+        budget.register("removed", 1, 0);
+        budget.unregister("removed");
+        assertEquals(Integer.valueOf(2), budget.run("removed", 4, budget::getUsedThreads));
+        assertEquals(0, budget.getUsedThreads());
+    }
+}
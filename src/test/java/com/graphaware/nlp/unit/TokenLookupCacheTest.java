@@ -0,0 +1,51 @@
+package com.graphaware.nlp.unit;
+
+import com.graphaware.nlp.processor.stanford.cache.TokenLookupCache;
+import edu.stanford.nlp.ling.CoreLabel;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TokenLookupCacheTest {
+
+    @Test
+    public void testEntriesAreKeyedByPipelineAndText() {
+        TokenLookupCache cache = new TokenLookupCache(10);
+        List<CoreLabel> tokens = Collections.singletonList(new CoreLabel());
+        cache.put("a", "winners", tokens);
+
+        assertEquals(tokens, cache.get("a", "winners"));
+        assertNull(cache.get("b", "winners"));
+        assertNull(cache.get("a", "winner"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        TokenLookupCache cache = new TokenLookupCache(2);
+        cache.put("a", "one", Collections.emptyList());
+        cache.put("a", "two", Collections.emptyList());
+        cache.get("a", "one");
+        cache.put("a", "three", Collections.emptyList());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a", "one"));
+        assertNull(cache.get("a", "two"));
+        assertNotNull(cache.get("a", "three"));
+    }
+
+    @Test
+    public void testInvalidateOnlyDropsThePipelineEntries() {
+        TokenLookupCache cache = new TokenLookupCache(10);
+        cache.put("a", "one", Collections.emptyList());
+        cache.put("b", "one", Collections.emptyList());
+        cache.invalidate("a");
+
+        assertNull(cache.get("a", "one"));
+        assertNotNull(cache.get("b", "one"));
+    }
+}